@@ -0,0 +1,183 @@
+package at.ac.tuwien.ifs.sge.game.risk.board;
+
+import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskConfiguration;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks of the hot paths of the engine. Every benchmark cycles through a fixed set of
+ * positions sampled from seeded random playouts, so all phases of a game are covered and runs stay
+ * comparable.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RiskBenchmark {
+
+  private static final long SEED = 42L;
+  private static final int NUMBER_OF_POSITIONS = 256;
+  private static final int MAX_PLAYOUT_ACTIONS = 5000;
+
+  @Param({"default", "simple_3"})
+  public String map;
+
+  @Param({"2", "3"})
+  public int players;
+
+  @Param({"true", "false"})
+  public boolean fortifyOnlyFromSingleTerritory;
+
+  @Param({"true", "false"})
+  public boolean withCards;
+
+  private RiskConfiguration configuration;
+  private Risk[] positions;
+  private RiskBoard[] boards;
+  private RiskAction[] actions;
+  private Random random;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    configuration = loadConfiguration();
+    random = new Random(SEED);
+    List<Risk> sampledPositions = new ArrayList<>(NUMBER_OF_POSITIONS);
+    List<RiskAction> sampledActions = new ArrayList<>(NUMBER_OF_POSITIONS);
+    while (sampledPositions.size() < NUMBER_OF_POSITIONS) {
+      Risk risk = new Risk(configuration, players, random.nextLong());
+      for (int i = 0; i < MAX_PLAYOUT_ACTIONS && !risk.isGameOver()
+          && sampledPositions.size() < NUMBER_OF_POSITIONS; i++) {
+        RiskAction action = chooseAction(risk, random);
+        if (random.nextInt(8) == 0) {
+          sampledPositions.add(risk);
+          sampledActions.add(action);
+        }
+        risk = (Risk) risk.doAction(action);
+      }
+    }
+    positions = sampledPositions.toArray(new Risk[0]);
+    boards = sampledPositions.stream().map(Risk::getBoard).toArray(RiskBoard[]::new);
+    actions = sampledActions.toArray(new RiskAction[0]);
+    next = 0;
+  }
+
+  private RiskConfiguration loadConfiguration() {
+    RiskConfiguration configuration;
+    if ("default".equals(map)) {
+      configuration = RiskConfiguration.getYaml()
+          .load(RiskConfiguration.getYaml().dump(RiskConfiguration.RISK_DEFAULT_CONFIG));
+    } else {
+      try (InputStream in = RiskBenchmark.class.getResourceAsStream("/risk_" + map + ".yaml")) {
+        if (in == null) {
+          throw new IllegalArgumentException("Unknown map " + map);
+        }
+        configuration = RiskConfiguration.getYaml()
+            .load(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    configuration.setFortifyOnlyFromSingleTerritory(fortifyOnlyFromSingleTerritory);
+    configuration.setWithCards(withCards);
+    configuration.setMaxNumberOfPlayers(Math.max(players, configuration.getMaxNumberOfPlayers()));
+    return configuration;
+  }
+
+  private static RiskAction chooseAction(Risk risk, Random random) {
+    if (risk.getCurrentPlayer() < 0) {
+      return risk.determineNextAction();
+    }
+    Set<RiskAction> possibleActions = risk.getPossibleActions();
+    int skip = random.nextInt(possibleActions.size());
+    for (RiskAction action : possibleActions) {
+      if (skip-- == 0) {
+        return action;
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  private int nextPosition() {
+    int position = next;
+    next = (next + 1) % positions.length;
+    return position;
+  }
+
+  @Benchmark
+  public Set<RiskAction> getPossibleActions() {
+    return positions[nextPosition()].getPossibleActions();
+  }
+
+  @Benchmark
+  public Object doAction() {
+    int position = nextPosition();
+    return positions[position].doAction(actions[position]);
+  }
+
+  @Benchmark
+  public RiskBoard copyBoard() {
+    return new RiskBoard(boards[nextPosition()]);
+  }
+
+  @Benchmark
+  public boolean isGameOver() {
+    return positions[nextPosition()].isGameOver();
+  }
+
+  @Benchmark
+  public String toTextRepresentation() {
+    return positions[nextPosition()].toTextRepresentation();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 10, batchSize = 10)
+  @Measurement(iterations = 10, batchSize = 10)
+  public void playout(Blackhole blackhole) {
+    Risk risk = new Risk(configuration, players, random.nextLong());
+    for (int i = 0; i < MAX_PLAYOUT_ACTIONS && !risk.isGameOver(); i++) {
+      risk = (Risk) risk.doAction(chooseAction(risk, random));
+    }
+    blackhole.consume(risk);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 10, batchSize = 10)
+  @Measurement(iterations = 10, batchSize = 10)
+  public void blitzPlayout(Blackhole blackhole) {
+    Risk risk = new Risk(configuration, players, random.nextLong());
+    for (int i = 0; i < MAX_PLAYOUT_ACTIONS && !risk.isGameOver(); i++) {
+      RiskAction action = chooseAction(risk, random);
+      Risk next = risk.getCurrentPlayer() < 0 ? null : risk.blitz(action);
+      risk = next != null ? next : (Risk) risk.doAction(action);
+    }
+    blackhole.consume(risk);
+  }
+
+}
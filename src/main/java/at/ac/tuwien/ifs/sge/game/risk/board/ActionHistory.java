@@ -0,0 +1,106 @@
+package at.ac.tuwien.ifs.sge.game.risk.board;
+
+import at.ac.tuwien.ifs.sge.game.ActionRecord;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+
+/**
+ * An immutable list of action records where appending shares the whole existing history. Each
+ * instance only holds the most recent record and a link to the history before it, so a game and
+ * all games derived from it share their common prefix. Appending and accessing the most recent
+ * records is cheap, get() walks back from the most recent record. Iterating, streaming and
+ * toArray() materialize the records once, so everything built on iterator() stays linear.
+ */
+final class ActionHistory extends AbstractList<ActionRecord<RiskAction>> {
+
+  static final ActionHistory EMPTY = new ActionHistory(null, null, 0);
+
+  private final ActionHistory previous;
+  private final ActionRecord<RiskAction> last;
+  private final int size;
+
+  private ActionHistory(ActionHistory previous, ActionRecord<RiskAction> last, int size) {
+    this.previous = previous;
+    this.last = last;
+    this.size = size;
+  }
+
+  static ActionHistory of(List<ActionRecord<RiskAction>> actionRecords) {
+    if (actionRecords instanceof ActionHistory) {
+      return (ActionHistory) actionRecords;
+    }
+    ActionHistory history = EMPTY;
+    for (ActionRecord<RiskAction> actionRecord : actionRecords) {
+      history = history.append(actionRecord);
+    }
+    return history;
+  }
+
+  ActionHistory append(ActionRecord<RiskAction> actionRecord) {
+    return new ActionHistory(this, actionRecord, size + 1);
+  }
+
+  /**
+   * Returns the history without its most recent record.
+   */
+  ActionHistory previous() {
+    return previous;
+  }
+
+  @Override
+  public ActionRecord<RiskAction> get(int index) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+    ActionHistory history = this;
+    for (int i = size - 1; i > index; i--) {
+      history = history.previous;
+    }
+    return history.last;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  private Object[] records() {
+    Object[] records = new Object[size];
+    ActionHistory history = this;
+    for (int i = size - 1; i >= 0; i--) {
+      records[i] = history.last;
+      history = history.previous;
+    }
+    return records;
+  }
+
+  @Override
+  public Iterator<ActionRecord<RiskAction>> iterator() {
+    return listIterator(0);
+  }
+
+  @Override
+  public ListIterator<ActionRecord<RiskAction>> listIterator(int index) {
+    @SuppressWarnings("unchecked")
+    List<ActionRecord<RiskAction>> records = (List<ActionRecord<RiskAction>>) (List<?>) Arrays
+        .asList(records());
+    return Collections.unmodifiableList(records).listIterator(index);
+  }
+
+  @Override
+  public Spliterator<ActionRecord<RiskAction>> spliterator() {
+    return Spliterators.spliterator(records(), Spliterator.ORDERED | Spliterator.IMMUTABLE);
+  }
+
+  @Override
+  public Object[] toArray() {
+    return records();
+  }
+
+}
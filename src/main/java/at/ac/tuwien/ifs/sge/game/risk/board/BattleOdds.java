@@ -0,0 +1,299 @@
+package at.ac.tuwien.ifs.sge.game.risk.board;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exact outcome distributions of a single dice round for every combination of attacker and
+ * defender dice up to the configured maximum. The attacker and defender each roll their dice, both
+ * hands are sorted descending and compared pairwise, the defender wins ties. An outcome is
+ * identified by the number of casualties of the attacker, the defender loses the remaining
+ * compared dice. Tables are immutable and shared between all games with the same dice limits.
+ */
+public final class BattleOdds {
+
+  static final int DICE_FACES = 6;
+  /**
+   * 6^24 is the largest power of six which fits in a long, beyond that outcomes can not be counted
+   * exactly.
+   */
+  private static final int MAX_TOTAL_DICE = 24;
+
+  private static final Map<Long, BattleOdds> CACHE = new ConcurrentHashMap<>();
+
+  private final int maxAttackerDice;
+  private final int maxDefenderDice;
+  private final long[][][] outcomes;
+  private final long[][] totals;
+  private final double[][][] probabilities;
+  private final double[][][] aliasProbabilities;
+  private final int[][][] aliases;
+
+  private BattleOdds(int maxAttackerDice, int maxDefenderDice) {
+    this.maxAttackerDice = maxAttackerDice;
+    this.maxDefenderDice = maxDefenderDice;
+    outcomes = new long[maxAttackerDice + 1][maxDefenderDice + 1][];
+    totals = new long[maxAttackerDice + 1][maxDefenderDice + 1];
+    probabilities = new double[maxAttackerDice + 1][maxDefenderDice + 1][];
+    aliasProbabilities = new double[maxAttackerDice + 1][maxDefenderDice + 1][];
+    aliases = new int[maxAttackerDice + 1][maxDefenderDice + 1][];
+    for (int a = 1; a <= maxAttackerDice; a++) {
+      for (int d = 1; d <= maxDefenderDice; d++) {
+        final int compared = Math.min(a, d);
+        long[] counts = new long[compared + 1];
+        List<int[]> attackerHands = new ArrayList<>();
+        List<Long> attackerWeights = new ArrayList<>();
+        enumerateHands(a, new int[compared], 0, DICE_FACES, attackerHands, attackerWeights);
+        List<int[]> defenderHands = new ArrayList<>();
+        List<Long> defenderWeights = new ArrayList<>();
+        enumerateHands(d, new int[compared], 0, DICE_FACES, defenderHands, defenderWeights);
+        for (int i = 0; i < attackerHands.size(); i++) {
+          int[] attackerHand = attackerHands.get(i);
+          long attackerWeight = attackerWeights.get(i);
+          for (int j = 0; j < defenderHands.size(); j++) {
+            int[] defenderHand = defenderHands.get(j);
+            int attackerCasualties = 0;
+            for (int die = 0; die < compared; die++) {
+              if (attackerHand[die] <= defenderHand[die]) {
+                attackerCasualties++;
+              }
+            }
+            counts[attackerCasualties] += attackerWeight * defenderWeights.get(j);
+          }
+        }
+        long total = pow(DICE_FACES, a + d);
+        outcomes[a][d] = counts;
+        totals[a][d] = total;
+        probabilities[a][d] = new double[compared + 1];
+        for (int c = 0; c <= compared; c++) {
+          probabilities[a][d][c] = (double) counts[c] / total;
+        }
+        aliasProbabilities[a][d] = new double[compared + 1];
+        aliases[a][d] = new int[compared + 1];
+        buildAliasTable(counts, total, aliasProbabilities[a][d], aliases[a][d]);
+      }
+    }
+  }
+
+  /**
+   * Returns the table for the given dice limits. Tables are computed once and cached.
+   *
+   * @param maxAttackerDice - the maximum number of dice of the attacker
+   * @param maxDefenderDice - the maximum number of dice of the defender
+   * @return the table
+   * @throws IllegalArgumentException if a limit is negative or the limits are too large to count
+   *                                  outcomes exactly
+   */
+  public static BattleOdds of(int maxAttackerDice, int maxDefenderDice) {
+    if (maxAttackerDice < 0 || maxDefenderDice < 0) {
+      throw new IllegalArgumentException("Negative number of dice");
+    }
+    if (maxAttackerDice + maxDefenderDice > MAX_TOTAL_DICE) {
+      throw new IllegalArgumentException(
+          "Too many dice: " + maxAttackerDice + " and " + maxDefenderDice);
+    }
+    return CACHE.computeIfAbsent(((long) maxAttackerDice << 32) | maxDefenderDice,
+        k -> new BattleOdds(maxAttackerDice, maxDefenderDice));
+  }
+
+  /**
+   * Enumerates the highest dice of a roll of n dice, sorted descending, together with the number
+   * of ordered rolls whose highest dice they are. Only the highest dice are compared, so the
+   * remaining dice are counted instead of enumerated.
+   */
+  private static void enumerateHands(int n, int[] hand, int die, int maxFace, List<int[]> hands,
+      List<Long> weights) {
+    if (die == hand.length) {
+      hands.add(hand.clone());
+      weights.add(countRolls(n, hand));
+      return;
+    }
+    for (int face = maxFace; face >= 1; face--) {
+      hand[die] = face;
+      enumerateHands(n, hand, die + 1, face, hands, weights);
+    }
+  }
+
+  /**
+   * Counts the ordered rolls of n dice whose highest dice, sorted descending, are the given hand.
+   * Every other die shows at most the lowest face of the hand.
+   */
+  private static long countRolls(int n, int[] hand) {
+    if (hand.length == 0) {
+      return pow(DICE_FACES, n);
+    }
+    final int lowest = hand[hand.length - 1];
+    final int rest = n - hand.length;
+    long above = 1;
+    int remaining = n;
+    int run = 0;
+    int lowestRun = 0;
+    for (int i = 0; i < hand.length; i++) {
+      run++;
+      if (i + 1 == hand.length || hand[i + 1] != hand[i]) {
+        if (hand[i] == lowest) {
+          lowestRun = run;
+        } else {
+          above *= binomial(remaining, run);
+          remaining -= run;
+        }
+        run = 0;
+      }
+    }
+    long rolls = 0;
+    for (int extra = 0; extra <= rest; extra++) {
+      rolls += binomial(remaining, lowestRun + extra) * pow(lowest - 1, rest - extra);
+    }
+    return above * rolls;
+  }
+
+  private static long binomial(int n, int k) {
+    long binomial = 1;
+    for (int i = 1; i <= k; i++) {
+      binomial = binomial * (n - k + i) / i;
+    }
+    return binomial;
+  }
+
+  /**
+   * Vose's alias method. Splits the distribution into equally likely columns, each holding at most
+   * two outcomes, so that sampling takes one uniform column and one biased coin.
+   */
+  private static void buildAliasTable(long[] counts, long total, double[] probability,
+      int[] alias) {
+    final int n = counts.length;
+    double[] scaled = new double[n];
+    int[] small = new int[n];
+    int[] large = new int[n];
+    int smallSize = 0;
+    int largeSize = 0;
+    for (int i = 0; i < n; i++) {
+      scaled[i] = (double) counts[i] * n / total;
+      if (scaled[i] < 1D) {
+        small[smallSize++] = i;
+      } else {
+        large[largeSize++] = i;
+      }
+    }
+    while (smallSize > 0 && largeSize > 0) {
+      int less = small[--smallSize];
+      int more = large[--largeSize];
+      probability[less] = scaled[less];
+      alias[less] = more;
+      scaled[more] = (scaled[more] + scaled[less]) - 1D;
+      if (scaled[more] < 1D) {
+        small[smallSize++] = more;
+      } else {
+        large[largeSize++] = more;
+      }
+    }
+    while (largeSize > 0) {
+      int more = large[--largeSize];
+      probability[more] = 1D;
+      alias[more] = more;
+    }
+    while (smallSize > 0) {
+      int less = small[--smallSize];
+      probability[less] = 1D;
+      alias[less] = less;
+    }
+  }
+
+  private static long pow(long base, int exponent) {
+    long pow = 1;
+    for (int i = 0; i < exponent; i++) {
+      pow *= base;
+    }
+    return pow;
+  }
+
+  private void checkDice(int attackerDice, int defenderDice) {
+    if (!(1 <= attackerDice && attackerDice <= maxAttackerDice
+        && 1 <= defenderDice && defenderDice <= maxDefenderDice)) {
+      throw new IllegalArgumentException(
+          "Illegal number of dice: " + attackerDice + " and " + defenderDice);
+    }
+  }
+
+  /**
+   * Return the maximum number of dice of the attacker this table covers.
+   *
+   * @return the maximum number of attacker dice
+   */
+  public int getMaxAttackerDice() {
+    return maxAttackerDice;
+  }
+
+  /**
+   * Return the maximum number of dice of the defender this table covers.
+   *
+   * @return the maximum number of defender dice
+   */
+  public int getMaxDefenderDice() {
+    return maxDefenderDice;
+  }
+
+  /**
+   * Return the number of ordered rolls of all dice which result in the given casualties. Together
+   * with getTotalRolls() this is the exact probability of the outcome.
+   *
+   * @param attackerDice - the number of dice the attacker rolls
+   * @param defenderDice - the number of dice the defender rolls
+   * @param attackerCasualties - the number of troops the attacker loses
+   * @return the number of rolls resulting in the outcome
+   */
+  public long getRolls(int attackerDice, int defenderDice, int attackerCasualties) {
+    checkDice(attackerDice, defenderDice);
+    long[] counts = outcomes[attackerDice][defenderDice];
+    return 0 <= attackerCasualties && attackerCasualties < counts.length
+        ? counts[attackerCasualties] : 0L;
+  }
+
+  /**
+   * Return the number of ordered rolls of all dice, i.e. 6^(attackerDice + defenderDice).
+   *
+   * @param attackerDice - the number of dice the attacker rolls
+   * @param defenderDice - the number of dice the defender rolls
+   * @return the number of rolls
+   */
+  public long getTotalRolls(int attackerDice, int defenderDice) {
+    checkDice(attackerDice, defenderDice);
+    return totals[attackerDice][defenderDice];
+  }
+
+  /**
+   * Return the probability that the attacker loses the given number of troops in a dice round. The
+   * defender loses min(attackerDice, defenderDice) - attackerCasualties troops.
+   *
+   * @param attackerDice - the number of dice the attacker rolls
+   * @param defenderDice - the number of dice the defender rolls
+   * @param attackerCasualties - the number of troops the attacker loses
+   * @return the probability of the outcome
+   */
+  public double getProbability(int attackerDice, int defenderDice, int attackerCasualties) {
+    checkDice(attackerDice, defenderDice);
+    double[] p = probabilities[attackerDice][defenderDice];
+    return 0 <= attackerCasualties && attackerCasualties < p.length ? p[attackerCasualties] : 0D;
+  }
+
+  /**
+   * Samples the number of troops the attacker loses in a dice round in constant time.
+   *
+   * @param attackerDice - the number of dice the attacker rolls
+   * @param defenderDice - the number of dice the defender rolls
+   * @param random - the source of randomness
+   * @return the number of troops the attacker loses
+   */
+  public int sampleAttackerCasualties(int attackerDice, int defenderDice,
+      SplittableRandom random) {
+    checkDice(attackerDice, defenderDice);
+    double[] probability = aliasProbabilities[attackerDice][defenderDice];
+    int column = random.nextInt(probability.length);
+    return random.nextDouble() < probability[column] ? column
+        : aliases[attackerDice][defenderDice][column];
+  }
+
+}
@@ -0,0 +1,379 @@
+package at.ac.tuwien.ifs.sge.game.risk.board;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Exact outcomes of whole battles. A battle between a attacking and d defending troops is fought
+ * round after round, each side rolling as many dice as it has troops up to its dice limit, until
+ * one side has no troops left. Win probabilities and expected survivors of battles up to
+ * MAX_TABLE_TROOPS troops per side are kept in a table which grows on demand, larger battles are
+ * solved per query in memory linear in the number of troops. Loss distributions of small battles
+ * are memoized. Oracles are thread-safe and shared between all games with the same dice limits.
+ */
+public final class BattleOracle {
+
+  private static final int INITIAL_TABLE_SIZE = 16;
+  private static final int MAX_TABLE_TROOPS = 256;
+  private static final int MAX_MEMOIZED_TROOPS = 64;
+
+  private static final Map<Long, BattleOracle> CACHE = new ConcurrentHashMap<>();
+
+  private final BattleOdds battleOdds;
+  private final Map<Long, double[][]> distributions = new ConcurrentHashMap<>();
+  private volatile Table table;
+
+  private BattleOracle(BattleOdds battleOdds) {
+    this.battleOdds = battleOdds;
+    this.table = new Table(battleOdds, INITIAL_TABLE_SIZE, INITIAL_TABLE_SIZE);
+  }
+
+  /**
+   * Returns the oracle for the given dice limits. Oracles are created once and cached.
+   *
+   * @param maxAttackerDice - the maximum number of dice of the attacker
+   * @param maxDefenderDice - the maximum number of dice of the defender
+   * @return the oracle
+   */
+  public static BattleOracle of(int maxAttackerDice, int maxDefenderDice) {
+    return of(BattleOdds.of(maxAttackerDice, maxDefenderDice));
+  }
+
+  static BattleOracle of(BattleOdds battleOdds) {
+    return CACHE.computeIfAbsent(
+        ((long) battleOdds.getMaxAttackerDice() << 32) | battleOdds.getMaxDefenderDice(),
+        k -> new BattleOracle(battleOdds));
+  }
+
+  private static void checkTroops(int attackers, int defenders) {
+    if (attackers < 0 || defenders < 0) {
+      throw new IllegalArgumentException(
+          "Illegal number of troops: " + attackers + " and " + defenders);
+    }
+  }
+
+  /**
+   * Returns a table covering the given battle, growing the shared table if necessary, or null if
+   * the battle is too large for the table.
+   */
+  private Table tableFor(int attackers, int defenders) {
+    if (attackers >= MAX_TABLE_TROOPS || defenders >= MAX_TABLE_TROOPS) {
+      return null;
+    }
+    Table current = table;
+    if (attackers < current.attackers && defenders < current.defenders) {
+      return current;
+    }
+    synchronized (this) {
+      current = table;
+      if (attackers >= current.attackers || defenders >= current.defenders) {
+        int nextAttackers = current.attackers;
+        while (nextAttackers <= attackers) {
+          nextAttackers = Math.min(2 * nextAttackers, MAX_TABLE_TROOPS);
+        }
+        int nextDefenders = current.defenders;
+        while (nextDefenders <= defenders) {
+          nextDefenders = Math.min(2 * nextDefenders, MAX_TABLE_TROOPS);
+        }
+        current = new Table(battleOdds, nextAttackers, nextDefenders);
+        table = current;
+      }
+      return current;
+    }
+  }
+
+  /**
+   * Return the probability that the attacker conquers the defending territory.
+   *
+   * @param attackers - the number of troops the attacker fights with
+   * @param defenders - the number of troops defending
+   * @return the probability of the attacker winning the battle
+   */
+  public double getWinProbability(int attackers, int defenders) {
+    checkTroops(attackers, defenders);
+    Table table = tableFor(attackers, defenders);
+    return table != null ? table.win(attackers, defenders) : solve(attackers, defenders)[0];
+  }
+
+  /**
+   * Return the expected number of attacking troops left at the end of the battle. Lost battles
+   * count as zero.
+   *
+   * @param attackers - the number of troops the attacker fights with
+   * @param defenders - the number of troops defending
+   * @return the expected number of surviving attackers
+   */
+  public double getExpectedAttackerSurvivors(int attackers, int defenders) {
+    checkTroops(attackers, defenders);
+    Table table = tableFor(attackers, defenders);
+    return table != null ? table.attackerSurvivors(attackers, defenders)
+        : solve(attackers, defenders)[1];
+  }
+
+  /**
+   * Return the expected number of defending troops left at the end of the battle. Won battles
+   * count as zero.
+   *
+   * @param attackers - the number of troops the attacker fights with
+   * @param defenders - the number of troops defending
+   * @return the expected number of surviving defenders
+   */
+  public double getExpectedDefenderSurvivors(int attackers, int defenders) {
+    checkTroops(attackers, defenders);
+    Table table = tableFor(attackers, defenders);
+    return table != null ? table.defenderSurvivors(attackers, defenders)
+        : solve(attackers, defenders)[2];
+  }
+
+  /**
+   * Return the distribution of the troops the attacker loses in the battle. The entry at index k is
+   * the probability of losing exactly k troops, the last entry is the probability of losing the
+   * battle.
+   *
+   * @param attackers - the number of troops the attacker fights with
+   * @param defenders - the number of troops defending
+   * @return an array of length attackers + 1
+   */
+  public double[] getAttackerLossDistribution(int attackers, int defenders) {
+    return distributions(attackers, defenders)[0].clone();
+  }
+
+  /**
+   * Return the distribution of the troops the defender loses in the battle. The entry at index k is
+   * the probability of losing exactly k troops, the last entry is the probability of the attacker
+   * winning the battle.
+   *
+   * @param attackers - the number of troops the attacker fights with
+   * @param defenders - the number of troops defending
+   * @return an array of length defenders + 1
+   */
+  public double[] getDefenderLossDistribution(int attackers, int defenders) {
+    return distributions(attackers, defenders)[1].clone();
+  }
+
+  /**
+   * Samples the outcome of a whole battle. Battles small enough for memoized loss distributions are
+   * drawn from them at once, larger battles roll their rounds without any state besides the troops
+   * left. Either way the outcome is distributed exactly like playing the battle round by round.
+   *
+   * @param attackers - the number of troops the attacker fights with
+   * @param defenders - the number of troops defending
+   * @param random - the source of randomness
+   * @return the number of surviving attackers if the attacker won, else the negated number of
+   *     surviving defenders
+   */
+  public int sampleSurvivors(int attackers, int defenders, SplittableRandom random) {
+    checkTroops(attackers, defenders);
+    if (attackers == 0 || defenders == 0) {
+      return attackers > 0 ? attackers : -defenders;
+    }
+    if (attackers > MAX_MEMOIZED_TROOPS || defenders > MAX_MEMOIZED_TROOPS) {
+      int a = attackers;
+      int d = defenders;
+      while (a > 0 && d > 0) {
+        final int attackerDice = Math.min(a, battleOdds.getMaxAttackerDice());
+        final int defenderDice = Math.min(d, battleOdds.getMaxDefenderDice());
+        final int lost = battleOdds.sampleAttackerCasualties(attackerDice, defenderDice, random);
+        a -= lost;
+        d -= Math.min(attackerDice, defenderDice) - lost;
+      }
+      return a > 0 ? a : -d;
+    }
+    // a won battle is determined by the attacker losses, a lost one by the defender losses
+    final double[][] distributions = distributions(attackers, defenders);
+    double u = random.nextDouble();
+    int outcome = 0;
+    for (int k = 0; k < attackers; k++) {
+      final double p = distributions[0][k];
+      if (p > 0D) {
+        outcome = attackers - k;
+        if ((u -= p) < 0D) {
+          return outcome;
+        }
+      }
+    }
+    for (int k = 0; k < defenders; k++) {
+      final double p = distributions[1][k];
+      if (p > 0D) {
+        outcome = k - defenders;
+        if ((u -= p) < 0D) {
+          return outcome;
+        }
+      }
+    }
+    return outcome;
+  }
+
+  private double[][] distributions(int attackers, int defenders) {
+    checkTroops(attackers, defenders);
+    if (attackers > MAX_MEMOIZED_TROOPS || defenders > MAX_MEMOIZED_TROOPS) {
+      return computeDistributions(attackers, defenders);
+    }
+    return distributions.computeIfAbsent(((long) attackers << 32) | defenders,
+        k -> computeDistributions(attackers, defenders));
+  }
+
+  /**
+   * Pushes the probability mass of the battle forward through all intermediate states. Every round
+   * removes between one and maxCompared troops, so visiting the states in descending order of their
+   * total troops sees every state after all of its predecessors. Only the last maxCompared + 1 of
+   * these diagonals hold mass at any time.
+   */
+  private double[][] computeDistributions(int attackers, int defenders) {
+    double[] attackerLosses = new double[attackers + 1];
+    double[] defenderLosses = new double[defenders + 1];
+    final int window = maxCompared() + 1;
+    double[][] mass = new double[window][attackers + 1];
+    mass[(attackers + defenders) % window][attackers] = 1D;
+    for (int total = attackers + defenders; total >= 0; total--) {
+      final double[] diagonal = mass[total % window];
+      for (int a = Math.min(attackers, total); a >= 0 && total - a <= defenders; a--) {
+        final int d = total - a;
+        final double p = diagonal[a];
+        if (p == 0D) {
+          continue;
+        }
+        diagonal[a] = 0D;
+        if (a == 0 || d == 0) {
+          attackerLosses[attackers - a] += p;
+          defenderLosses[defenders - d] += p;
+          continue;
+        }
+        final int attackerDice = Math.min(a, battleOdds.getMaxAttackerDice());
+        final int defenderDice = Math.min(d, battleOdds.getMaxDefenderDice());
+        final int compared = Math.min(attackerDice, defenderDice);
+        if (compared == 0) {
+          attackerLosses[attackers - a] += p;
+          defenderLosses[defenders - d] += p;
+          continue;
+        }
+        final double[] next = mass[(total - compared) % window];
+        for (int c = 0; c <= compared; c++) {
+          next[a - c] += p * battleOdds.getProbability(attackerDice, defenderDice, c);
+        }
+      }
+    }
+    return new double[][]{attackerLosses, defenderLosses};
+  }
+
+  private int maxCompared() {
+    return Math.min(battleOdds.getMaxAttackerDice(), battleOdds.getMaxDefenderDice());
+  }
+
+  /**
+   * Solves a battle too large for the shared table. The rows of the table are computed by
+   * ascending attackers, but only the last maxCompared + 1 rows are kept and nothing is cached.
+   *
+   * @return the win probability, the expected attacker and the expected defender survivors
+   */
+  private double[] solve(int attackers, int defenders) {
+    final int window = maxCompared() + 1;
+    double[][] win = new double[window][defenders + 1];
+    double[][] attackerSurvivors = new double[window][defenders + 1];
+    double[][] defenderSurvivors = new double[window][defenders + 1];
+    for (int a = 0; a <= attackers; a++) {
+      final int row = a % window;
+      for (int d = 0; d <= defenders; d++) {
+        win[row][d] = 0D;
+        attackerSurvivors[row][d] = 0D;
+        defenderSurvivors[row][d] = 0D;
+        if (d == 0) {
+          win[row][d] = a > 0 ? 1D : 0D;
+          attackerSurvivors[row][d] = a;
+          continue;
+        }
+        if (a == 0) {
+          defenderSurvivors[row][d] = d;
+          continue;
+        }
+        final int attackerDice = Math.min(a, battleOdds.getMaxAttackerDice());
+        final int defenderDice = Math.min(d, battleOdds.getMaxDefenderDice());
+        final int compared = Math.min(attackerDice, defenderDice);
+        if (compared == 0) {
+          attackerSurvivors[row][d] = a;
+          defenderSurvivors[row][d] = d;
+          continue;
+        }
+        for (int c = 0; c <= compared; c++) {
+          final double p = battleOdds.getProbability(attackerDice, defenderDice, c);
+          final int nextRow = (a - c) % window;
+          final int nextD = d - (compared - c);
+          win[row][d] += p * win[nextRow][nextD];
+          attackerSurvivors[row][d] += p * attackerSurvivors[nextRow][nextD];
+          defenderSurvivors[row][d] += p * defenderSurvivors[nextRow][nextD];
+        }
+      }
+    }
+    final int row = attackers % window;
+    return new double[]{win[row][defenders], attackerSurvivors[row][defenders],
+        defenderSurvivors[row][defenders]};
+  }
+
+  /**
+   * An immutable snapshot of the win probabilities and expected survivors of all battles smaller
+   * than its bounds.
+   */
+  private static final class Table {
+
+    private final int attackers;
+    private final int defenders;
+    private final double[] win;
+    private final double[] attackerSurvivors;
+    private final double[] defenderSurvivors;
+
+    private Table(BattleOdds battleOdds, int attackers, int defenders) {
+      this.attackers = attackers;
+      this.defenders = defenders;
+      win = new double[attackers * defenders];
+      attackerSurvivors = new double[attackers * defenders];
+      defenderSurvivors = new double[attackers * defenders];
+      for (int a = 0; a < attackers; a++) {
+        for (int d = 0; d < defenders; d++) {
+          final int i = index(a, d);
+          if (d == 0) {
+            win[i] = a > 0 ? 1D : 0D;
+            attackerSurvivors[i] = a;
+            continue;
+          }
+          if (a == 0) {
+            defenderSurvivors[i] = d;
+            continue;
+          }
+          final int attackerDice = Math.min(a, battleOdds.getMaxAttackerDice());
+          final int defenderDice = Math.min(d, battleOdds.getMaxDefenderDice());
+          final int compared = Math.min(attackerDice, defenderDice);
+          if (compared == 0) {
+            attackerSurvivors[i] = a;
+            defenderSurvivors[i] = d;
+            continue;
+          }
+          for (int c = 0; c <= compared; c++) {
+            final double p = battleOdds.getProbability(attackerDice, defenderDice, c);
+            final int next = index(a - c, d - (compared - c));
+            win[i] += p * win[next];
+            attackerSurvivors[i] += p * attackerSurvivors[next];
+            defenderSurvivors[i] += p * defenderSurvivors[next];
+          }
+        }
+      }
+    }
+
+    private int index(int a, int d) {
+      return a * defenders + d;
+    }
+
+    private double win(int a, int d) {
+      return win[index(a, d)];
+    }
+
+    private double attackerSurvivors(int a, int d) {
+      return attackerSurvivors[index(a, d)];
+    }
+
+    private double defenderSurvivors(int a, int d) {
+      return defenderSurvivors[index(a, d)];
+    }
+  }
+
+}
@@ -1,35 +1,46 @@
 package at.ac.tuwien.ifs.sge.game.risk.board;
 
 import at.ac.tuwien.ifs.sge.game.ActionRecord;
-import at.ac.tuwien.ifs.sge.game.Dice;
 import at.ac.tuwien.ifs.sge.game.Game;
 import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskConfiguration;
 import at.ac.tuwien.ifs.sge.game.risk.util.PriestLogic;
 import at.ac.tuwien.ifs.sge.util.Util;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-
+import java.util.stream.Stream;
+
+/**
+ * A game of Risk. Copying a game, i.e. doAction(), getGame(), getBoard() and the copy constructor,
+ * never draws from the random of the original and leaves its observable state unchanged. The only
+ * write to the original is that its board gives up exclusive ownership of the components it shares
+ * with the copy, which happens once and always writes the same value. Copies of one game can
+ * therefore be created from several threads at once, whereas apply(), undo(),
+ * determineNextAction() and sampleRandomAction() modify the game and must not run concurrently.
+ */
 public class Risk implements Game<RiskAction, RiskBoard> {
 
   private final static int CASUALTIES_PLAYER = -6;
   private final static int DRAW_CARD_PLAYER = -2;
   private final static int MISSION_FULFILLED_PLAYER = -3;
   private final static int BONUS_PLAYER = -5;
+  private final static int INITIAL_ACTION_BUFFER_SIZE = 256;
 
   private final boolean canonical;
-  private final Dice attackerDice;
-  private final Dice defenderDice;
+  private final boolean seeded;
+  private final long seed;
+  private SplittableRandom random;
   private int currentPlayerId;
-  private List<ActionRecord<RiskAction>> actionRecords;
+  private ActionHistory actionRecords;
   private RiskBoard board;
 
   public Risk() {
@@ -46,36 +57,73 @@ public class Risk implements Game<RiskAction, RiskBoard> {
   }
 
   public Risk(RiskConfiguration configuration, int numberOfPlayers) {
-    this(0, true, Collections.emptyList(), new RiskBoard(configuration, numberOfPlayers));
+    this(configuration, numberOfPlayers, false, 0L, new SplittableRandom());
+  }
+
+  /**
+   * Creates a game whose randomness is fully determined by the given seed. Dealing the board,
+   * rolling the dice and drawing cards all draw from a random seeded with it, every copy of the
+   * game starts a random derived from the seed and the state it first draws in, see random(). Two
+   * games created with the same seed therefore evolve identically under the same sequence of calls,
+   * no matter how often they were copied in between, while different states draw different dice.
+   *
+   * @param configuration - the configuration of the game
+   * @param numberOfPlayers - the number of players
+   * @param seed - the seed of the game
+   */
+  public Risk(RiskConfiguration configuration, int numberOfPlayers, long seed) {
+    this(configuration, numberOfPlayers, true, seed, new SplittableRandom(seed));
+  }
+
+  private Risk(RiskConfiguration configuration, int numberOfPlayers, boolean seeded, long seed,
+      SplittableRandom random) {
+    this(0, true, Collections.emptyList(), new RiskBoard(configuration, numberOfPlayers, random),
+        seeded, seed, random);
     if (numberOfPlayers > configuration.getMaxNumberOfPlayers()) {
       throw new IllegalArgumentException("Wrong number of players");
     }
   }
 
   public Risk(Risk risk) {
-    this(risk.currentPlayerId, risk.canonical, risk.actionRecords, risk.board);
+    this(risk.currentPlayerId, risk.canonical, risk.actionRecords, risk.board, risk.seeded,
+        risk.seed, null);
   }
 
   public Risk(int currentPlayerId, boolean canonical,
       List<ActionRecord<RiskAction>> actionRecords, RiskBoard board) {
+    this(currentPlayerId, canonical, actionRecords, board, false, 0L, new SplittableRandom());
+  }
+
+  private Risk(int currentPlayerId, boolean canonical,
+      List<ActionRecord<RiskAction>> actionRecords, RiskBoard board, boolean seeded, long seed,
+      SplittableRandom random) {
     this.currentPlayerId = currentPlayerId;
     this.canonical = canonical;
-    this.actionRecords = new ArrayList<>(actionRecords);
+    this.seeded = seeded;
+    this.seed = seed;
+    this.random = random;
+    this.actionRecords = ActionHistory.of(actionRecords);
     this.board = new RiskBoard(board);
     if (!(getMinimumNumberOfPlayers() <= getNumberOfPlayers()
         && getNumberOfPlayers() <= getMaximumNumberOfPlayers())) {
       throw new IllegalArgumentException("Wrong number of players");
     }
 
-    this.attackerDice = new Dice(board.getMaxAttackerDice());
-    this.defenderDice = new Dice(board.getMaxDefenderDice());
   }
 
-  private static Set<RiskAction> possibleCasualties(final int attackerDice,
-      final int defenderDice) {
-    final int dice = Math.min(attackerDice, defenderDice);
-    return IntStream.rangeClosed(0, dice)
-        .mapToObj(die -> RiskAction.casualties(die, dice - die)).collect(Collectors.toSet());
+  /**
+   * Returns the random the dice and cards are drawn from. Copies start without one and create it on
+   * the first draw, so copying never touches the random of the original. Seeded games derive it
+   * from the seed, the length of the history and the hash of the state at that draw, so that the
+   * dice differ between the states reached by different actions. Unseeded games start a fresh one.
+   */
+  private SplittableRandom random() {
+    if (random == null) {
+      random = seeded ? new SplittableRandom(RiskTopology.mix(
+          (RiskTopology.mix(seed) ^ board.stateHash(currentPlayerId)) * 31 + actionRecords.size()))
+          : new SplittableRandom();
+    }
+    return random;
   }
 
   private static char decreaseLexicographical(char c) {
@@ -131,9 +179,12 @@ public class Risk implements Game<RiskAction, RiskBoard> {
   @Override
   public boolean isGameOver() {
     // all territories belong to one player
-    return !isInitialSelect() && board.getTerritories().values().stream().mapToInt(
-        RiskTerritory::getOccupantPlayerId).distinct().count()
-        == 1L;
+    return !isInitialSelect() && board.getNumberOfTerritories() > 0
+        && isOccupiedOnlyBy(board.getTerritoryOccupantIdAt(0));
+  }
+
+  private boolean isOccupiedOnlyBy(int player) {
+    return board.getNrOfTerritoriesOccupiedByPlayer(player) == board.getNumberOfTerritories();
   }
 
   @Override
@@ -158,9 +209,7 @@ public class Risk implements Game<RiskAction, RiskBoard> {
 
   @Override
   public double getUtilityValue(int i) {
-    Set<Integer> playersInGame = board.getTerritories().values().stream()
-        .map(RiskTerritory::getOccupantPlayerId).collect(Collectors.toSet());
-    if (playersInGame.size() <= 1 && playersInGame.contains(i)) {
+    if (board.getNumberOfTerritories() > 0 && isOccupiedOnlyBy(i)) {
       return 1D;
     }
     return 0D;
@@ -173,43 +222,205 @@ public class Risk implements Game<RiskAction, RiskBoard> {
 
   @Override
   public Set<RiskAction> getPossibleActions() {
+    long[] codes = new long[INITIAL_ACTION_BUFFER_SIZE];
+    int numberOfActions = generateActions(codes);
+    if (numberOfActions > codes.length) {
+      codes = new long[numberOfActions];
+      generateActions(codes);
+    }
+
+    Set<RiskAction> actions = new HashSet<>(2 * numberOfActions);
+    for (int i = 0; i < numberOfActions; i++) {
+      actions.add(toAction(codes[i]));
+    }
+    return actions;
+  }
+
+  /**
+   * Writes the possible actions of the current state into the given buffer as action codes. An
+   * action code packs an action into a single long without allocating a RiskAction. The codes are
+   * exactly the encoding of RiskAction.toLong(), territories are referred to by their id, so a
+   * code can be decoded with RiskAction.fromLong() or toAction(code) and applied directly with
+   * doAction(code).
+   * <p>
+   * If the buffer is too small only the first out.length codes are written. The returned number
+   * is always the total number of possible actions, so a buffer of that size will suffice.
+   *
+   * @param out - the buffer the action codes are written to
+   * @return the number of possible actions
+   */
+  public int generateActions(long[] out) {
+    CodeSink sink = new CodeSink(out);
+    generateActions(sink);
+    return sink.n;
+  }
+
+  /**
+   * Returns the possible actions of the current state grouped into ranges of troops. Unlike
+   * getPossibleActions() the size of the space does not depend on the number of troops involved,
+   * so it is cheap to count and sample from even with large stacks. The i-th action of the space
+   * is the i-th action code written by generateActions(long[]).
+   *
+   * @return the possible actions as an action space
+   */
+  public RiskActionSpace getActionSpace() {
+    RiskActionSpace.Builder builder = new RiskActionSpace.Builder();
+    generateActions(builder);
+    return builder.build();
+  }
+
+  /**
+   * Returns a lazy stream of the possible actions. Only the ranges of the actions are computed up
+   * front, the actions themselves are created one at a time while the stream is consumed, so short
+   * circuiting operations such as findFirst() or anyMatch() skip the rest. Call parallel() on the
+   * stream to process large action spaces in parallel.
+   *
+   * @return a stream of the possible actions
+   */
+  public Stream<RiskAction> streamPossibleActions() {
+    return getActionSpace().stream();
+  }
+
+  /**
+   * Draws one of the possible actions uniformly at random. The actions are counted per range and
+   * only the drawn one is decoded, neither a set of actions nor a buffer of action codes is built.
+   *
+   * @param random - the source of randomness
+   * @return a uniformly drawn possible action
+   * @throws IllegalStateException if there are no possible actions
+   */
+  public RiskAction sampleRandomAction(SplittableRandom random) {
+    SampleSink sink = new SampleSink();
+    generateActions(sink);
+    if (sink.n == 0) {
+      throw new IllegalStateException("No possible actions");
+    }
+    sink.select(random.nextInt(sink.n));
+    generateActions(sink);
+    return toAction(sink.code);
+  }
+
+  private void generateActions(RiskActionSpace.Sink sink) {
+    if (!board.getTopology().hasShortTerritoryIds()) {
+      throw new IllegalStateException("Territory ids do not fit into action codes");
+    }
     if (isGameOver()) {
-      return Collections.emptySet();
+      return;
     }
     if (currentPlayerId < 0) {
       if (board.isAttack()) {
-        return casualtiesGPA();
+        casualtiesGPA(sink);
       } else if (currentPlayerId == BONUS_PLAYER) {
-        return bonusGPA();
+        bonusGPA(sink);
       }
     } else if (isInitialSelect()) {
-      return initialSelectGPA();
+      initialSelectGPA(sink);
     } else if (isInitialReinforce()) {
-      return initialReinforceGPA();
+      initialReinforceGPA(sink);
     } else if (board.hasToTradeInCards(currentPlayerId)) {
-      return tradeInGPA();
+      tradeInGPA(sink);
     } else if (board.isReinforcementPhase()) {
-      return reinforceGPA();
+      reinforceGPA(sink);
     } else if (board.isAttackPhase()) {
-      return attackGPA();
+      attackGPA(sink);
     } else if (board.isOccupyPhase()) {
-      return occupyGPA();
+      occupyGPA(sink);
     } else if (board.isFortifyPhase()) {
-      return fortifyGPA();
+      fortifyGPA(sink);
     }
+  }
 
-    return Collections.emptySet();
+  /**
+   * Returns the action an action code generated by generateActions() stands for. Equivalent to
+   * RiskAction.fromLong(code).
+   *
+   * @param code - the action code
+   * @return the action the code stands for
+   */
+  public RiskAction toAction(long code) {
+    return RiskAction.fromLong(code);
+  }
+
+  /**
+   * Writes action codes into a buffer, counting the codes which do not fit.
+   */
+  private static final class CodeSink implements RiskActionSpace.Sink {
+
+    private final long[] out;
+    private int n;
+
+    private CodeSink(long[] out) {
+      this.out = out;
+    }
+
+    @Override
+    public void add(long code) {
+      if (n < out.length) {
+        out[n] = code;
+      }
+      n++;
+    }
+
+    @Override
+    public void addRange(int srcId, int targetId, int minValue, int maxValue) {
+      for (int value = minValue; value <= maxValue; value++) {
+        add(RiskAction.pack(srcId, targetId, value));
+      }
+    }
+  }
+
+  /**
+   * Counts the actions and, once an index is selected, picks the code of the action at that index
+   * on the next pass.
+   */
+  private static final class SampleSink implements RiskActionSpace.Sink {
+
+    private int n;
+    private int selected = -1;
+    private long code;
+
+    private void select(int index) {
+      selected = index;
+      n = 0;
+    }
+
+    @Override
+    public void add(long code) {
+      if (n == selected) {
+        this.code = code;
+      }
+      n++;
+    }
+
+    @Override
+    public void addRange(int srcId, int targetId, int minValue, int maxValue) {
+      if (minValue > maxValue) {
+        return;
+      }
+      final int size = maxValue - minValue + 1;
+      if (n <= selected && selected < n + size) {
+        code = RiskAction.pack(srcId, targetId, minValue + (selected - n));
+      }
+      n += size;
+    }
   }
 
   private boolean isInitialSelect() {
-    if (board.isInitialSelectMaybe() && (board.getTerritories().values().stream().anyMatch(
-        t -> !(0 <= t.getOccupantPlayerId() && t.getOccupantPlayerId() < getNumberOfPlayers())))) {
-      return true;
+    if (board.isInitialSelectMaybe()) {
+      for (int i = 0; i < board.getNumberOfTerritories(); i++) {
+        if (!isOccupied(board.getTerritoryOccupantIdAt(i))) {
+          return true;
+        }
+      }
     }
     board.disableInitialSelectMaybe();
     return false;
   }
 
+  private boolean isOccupied(int occupant) {
+    return 0 <= occupant && occupant < getNumberOfPlayers();
+  }
+
   private boolean isInitialReinforce() {
     if (board.isInitialReinforceMaybe() && board.areReinforcementsLeft()) {
       return true;
@@ -234,108 +445,146 @@ public class Risk implements Game<RiskAction, RiskBoard> {
     return PriestLogic.valid(board.missionFulfilled(player));
   }
 
-  private Set<RiskAction> initialSelectGPA() {
-    return board.getTerritories().entrySet().stream().filter(
-        t -> !(0 <= t.getValue().getOccupantPlayerId()
-            && t.getValue().getOccupantPlayerId() < getNumberOfPlayers())).mapToInt(Entry::getKey)
-        .mapToObj(RiskAction::select).collect(Collectors.toSet());
+  private void initialSelectGPA(RiskActionSpace.Sink sink) {
+    for (int i = 0; i < board.getNumberOfTerritories(); i++) {
+      if (!isOccupied(board.getTerritoryOccupantIdAt(i))) {
+        sink.add(RiskAction.pack(RiskAction.NO_ID, board.getTerritoryIdAt(i), 1));
+      }
+    }
   }
 
-  private Set<RiskAction> initialReinforceGPA() {
-    return board.getTerritoriesOccupiedByPlayer(this.currentPlayerId).stream()
-        .map(id -> RiskAction.reinforce(id, 1)).collect(Collectors.toSet());
+  private void initialReinforceGPA(RiskActionSpace.Sink sink) {
+    for (int i = 0; i < board.getNumberOfTerritories(); i++) {
+      if (board.getTerritoryOccupantIdAt(i) == currentPlayerId) {
+        sink.add(RiskAction.pack(RiskAction.NO_ID, board.getTerritoryIdAt(i), 1));
+      }
+    }
   }
 
-  private Set<RiskAction> tradeInGPA() {
-    return board.getTradeInSlots(currentPlayerId).stream().map(RiskAction::playCards)
-        .collect(Collectors.toUnmodifiableSet());
+  private void tradeInGPA(RiskActionSpace.Sink sink) {
+    for (int slots : board.getTradeInSlots(currentPlayerId)) {
+      sink.add(RiskAction.pack(RiskAction.CARD_ID, RiskAction.CARD_ID, slots));
+    }
   }
 
-  private Set<RiskAction> bonusGPA() {
-    return IntStream
-        .rangeClosed(board.getMinMatchingTerritories(), board.getMaxMatchingTerritories())
-        .mapToObj(RiskAction::bonusTroopsFromCards).collect(Collectors.toUnmodifiableSet());
+  private void bonusGPA(RiskActionSpace.Sink sink) {
+    sink.addRange(RiskAction.BONUS_ID, RiskAction.BONUS_ID, board.getMinMatchingTerritories(),
+        board.getMaxMatchingTerritories());
   }
 
-  private Set<RiskAction> reinforceGPA() {
-    Set<RiskAction> actions = new HashSet<>();
+  private void reinforceGPA(RiskActionSpace.Sink sink) {
     int reinforcementsLeft = board.reinforcementsLeft(currentPlayerId);
 
     if (board.couldTradeInCards(currentPlayerId)) {
-      actions.addAll(tradeInGPA());
+      tradeInGPA(sink);
     }
 
-    Map<Integer, RiskTerritory> territories = board.getTerritories().entrySet().stream().filter(
-        t -> t.getValue().getOccupantPlayerId() == currentPlayerId &&
-            !board.isReinforcedAlready(t.getKey()))
-        .collect(Collectors.toMap(Entry::getKey, Entry::getValue));
-
-    if (territories.size() == 1) {
-      for (Entry<Integer, RiskTerritory> territory : territories.entrySet()) {
-        actions.add(RiskAction.reinforce(territory.getKey(), reinforcementsLeft));
+    final int tradeInTerritoryBonus = board.getTradeInTerritoryBonus();
+    int options = 0;
+    int lastOption = -1;
+    int promisedReinforcements = 0;
+    for (int i = 0; i < board.getNumberOfTerritories(); i++) {
+      if (isReinforceOption(i)) {
+        options++;
+        lastOption = i;
+        if (board.inBonusTerritories(board.getTerritoryIdAt(i))) {
+          promisedReinforcements += tradeInTerritoryBonus;
+        }
       }
-    } else {
+    }
 
-      final int tradeInTerritoryBonus = board.getTradeInTerritoryBonus();
-      final int promisedReinforcements = (int) (territories.keySet().stream()
-          .filter(t -> board.inBonusTerritories(t)).count() * tradeInTerritoryBonus);
-
-      for (Entry<Integer, RiskTerritory> territory : territories.entrySet()) {
-        final int territoryId = territory.getKey();
-        final boolean inBonusTerritories = board.inBonusTerritories(territoryId);
-        for (int r = (inBonusTerritories ? tradeInTerritoryBonus : 1);
-            r <= (reinforcementsLeft - (promisedReinforcements - (inBonusTerritories
-                ? tradeInTerritoryBonus : 0)));
-            r++) {
-          actions.add(RiskAction.reinforce(territoryId, r));
-        }
+    if (options == 1) {
+      sink.add(RiskAction.pack(RiskAction.NO_ID, board.getTerritoryIdAt(lastOption),
+          reinforcementsLeft));
+      return;
+    }
+
+    for (int i = 0; i < board.getNumberOfTerritories(); i++) {
+      if (!isReinforceOption(i)) {
+        continue;
       }
+      final int territoryId = board.getTerritoryIdAt(i);
+      final boolean inBonusTerritories = board.inBonusTerritories(territoryId);
+      sink.addRange(RiskAction.NO_ID, territoryId, inBonusTerritories ? tradeInTerritoryBonus : 1,
+          reinforcementsLeft - (promisedReinforcements - (inBonusTerritories
+              ? tradeInTerritoryBonus : 0)));
     }
-    return actions;
   }
 
-  private Set<RiskAction> attackGPA() {
-    Set<RiskAction> actions = new HashSet<>();
-    actions.add(RiskAction.endPhase());
+  private boolean isReinforceOption(int index) {
+    return board.getTerritoryOccupantIdAt(index) == currentPlayerId
+        && !board.isReinforcedAlready(board.getTerritoryIdAt(index));
+  }
+
+  private void attackGPA(RiskActionSpace.Sink sink) {
+    sink.add(RiskAction.END_PHASE_CODE);
 
-    Set<Integer> territories = board
-        .getTerritoriesOccupiedByPlayerWithMoreThanOneTroops(this.currentPlayerId);
-    for (Integer territory : territories) {
-      Set<Integer> neighbors = board.neighboringEnemyTerritories(territory);
-      int maxAttack = board.getMaxAttackingTroops(territory);
-      for (int t = 1; t <= maxAttack; t++) {
-        final int finalT = t;
-        actions.addAll(
-            neighbors.stream().map(n -> RiskAction.attack(territory, n, finalT))
-                .collect(Collectors.toSet()));
+    if (currentPlayerId < 0 || currentPlayerId >= board.getNumberOfPlayers()) {
+      return;
+    }
+    for (int w = 0; w < board.getMaskWords(); w++) {
+      for (long frontier = board.getFrontierMaskWord(currentPlayerId, w); frontier != 0;
+          frontier &= frontier - 1) {
+        final int i = w * Long.SIZE + Long.numberOfTrailingZeros(frontier);
+        if (board.getTerritoryTroopsAt(i) <= 1) {
+          continue;
+        }
+        int maxAttack = board.getMaxAttackingTroopsAt(i);
+        final int attackingId = board.getTerritoryIdAt(i);
+        for (int e = board.neighborsStartAt(i); e < board.neighborsEndAt(i); e++) {
+          int neighbor = board.getNeighborAt(e);
+          if (board.getTerritoryOccupantIdAt(neighbor) != currentPlayerId) {
+            sink.addRange(attackingId, board.getTerritoryIdAt(neighbor), 1, maxAttack);
+          }
+        }
       }
     }
-
-    return actions;
   }
 
-  private Set<RiskAction> casualtiesGPA() {
-    return possibleCasualties(board.getNrOfAttackerDice(), board.getNrOfDefenderDice());
+  private void casualtiesGPA(RiskActionSpace.Sink sink) {
+    final int dice = Math.min(board.getNrOfAttackerDice(), board.getNrOfDefenderDice());
+    for (int die = 0; die <= dice; die++) {
+      sink.add(RiskAction.pack(RiskAction.CASUALTIES_ID, RiskAction.CASUALTIES_ID,
+          RiskAction.casualtiesValue(die, dice - die)));
+    }
   }
 
-  private Set<RiskAction> occupyGPA() {
-    return IntStream.rangeClosed(1, board.getMaxOccupy()).mapToObj(RiskAction::occupy).collect(
-        Collectors.toSet());
+  private void occupyGPA(RiskActionSpace.Sink sink) {
+    sink.addRange(RiskAction.OCCUPY_ID, RiskAction.OCCUPY_ID, 1, board.getMaxOccupy());
   }
 
-  private Set<RiskAction> fortifyGPA() {
-    Set<RiskAction> actions = new HashSet<>();
-    actions.add(RiskAction.endPhase());
+  private void fortifyGPA(RiskActionSpace.Sink sink) {
+    sink.add(RiskAction.END_PHASE_CODE);
 
-    for (Integer src : board.getTerritoriesOccupiedByPlayerWithMoreThanOneTroops(currentPlayerId)) {
-      for (Integer dest : board.getFortifyableTerritories(src)) {
-        for (int t = 1; t <= board.getFortifyableTroops(src); t++) {
-          actions.add(RiskAction.fortify(src, dest, t));
+    final int numberOfTerritories = board.getNumberOfTerritories();
+    for (int srcIndex = 0; srcIndex < numberOfTerritories; srcIndex++) {
+      if (board.getTerritoryOccupantIdAt(srcIndex) != currentPlayerId
+          || board.getTerritoryTroopsAt(srcIndex) <= 1) {
+        continue;
+      }
+      final int srcId = board.getTerritoryIdAt(srcIndex);
+      int fortifyableTroops = -1;
+      for (int destIndex = 0; destIndex < numberOfTerritories; destIndex++) {
+        if (destIndex != srcIndex && board.getTerritoryOccupantIdAt(destIndex) == currentPlayerId
+            && board.canFortifyAt(srcIndex, destIndex)) {
+          if (fortifyableTroops < 0) {
+            fortifyableTroops = board.getFortifyableTroops(srcId);
+          }
+          sink.addRange(srcId, board.getTerritoryIdAt(destIndex), 1, fortifyableTroops);
         }
       }
     }
+  }
 
-    return actions;
+  /**
+   * Returns a 64 bit Zobrist style hash of the current state, including the player to move. Equal
+   * states have equal hashes, so it can be used as key of a transposition table. The hash is
+   * deterministic across runs. Note that the order of the hidden deck of cards is not part of it.
+   *
+   * @return the hash of the current state
+   */
+  public long stateHash() {
+    return board.stateHash(currentPlayerId);
   }
 
   @Override
@@ -353,6 +602,9 @@ public class Risk implements Game<RiskAction, RiskBoard> {
         int armiesFought = Math.min(board.getNrOfAttackerDice(), board.getNrOfDefenderDice());
         int attackerCasualties = riskAction.attackerCasualties();
         int defenderCasualties = riskAction.defenderCasualties();
+        if (riskAction.isBattleCasualties()) {
+          return board.isBattleOutcome(attackerCasualties, defenderCasualties);
+        }
         return attackerCasualties + defenderCasualties == armiesFought;
       } else if (currentPlayerId == BONUS_PLAYER) {
         return riskAction.isBonus() && board.getMinMatchingTerritories() <= riskAction.getBonus()
@@ -421,36 +673,192 @@ public class Risk implements Game<RiskAction, RiskBoard> {
     if (isGameOver()) {
       throw new IllegalArgumentException("Game is over");
     }
-    Risk next = null;
+    Risk next = new Risk(this);
+    return next.doActionInPlace(riskAction) ? next : null;
+  }
+
+  /**
+   * Applies the given action to this game instead of returning a new one. The returned token can
+   * be passed to undo() to restore the state before the action exactly, including the random the
+   * dice and cards are drawn from. Tokens have to be undone in the reverse order they were
+   * obtained.
+   * <p>
+   * Note that this is not an in-place make/unmake. The board is swapped for a copy-on-write copy
+   * which shares all of its components with the previous board, and the token keeps the previous
+   * board, so undo() merely swaps it back. Other than doAction() no game and no history are copied
+   * and the random is only created once the action draws from it, like the random of a copy. Every
+   * call still allocates the shallow board copy and the token, and the first write to a component,
+   * e.g. the occupants, the troops or the frontier, clones that component.
+   *
+   * @param riskAction - the action to apply
+   * @return a token to undo the action, null if the action is not applicable at all
+   * @throws IllegalArgumentException if the action is not valid, the game is left unchanged
+   */
+  public UndoToken apply(RiskAction riskAction) {
+    if (riskAction == null) {
+      throw new IllegalArgumentException("Found null");
+    }
+    if (isGameOver()) {
+      throw new IllegalArgumentException("Game is over");
+    }
+    return applyInPlace(() -> doActionInPlace(riskAction));
+  }
+
+  private UndoToken applyInPlace(BooleanSupplier step) {
+    UndoToken token = new UndoToken(this, board, currentPlayerId, actionRecords, random);
+    board = new RiskBoard(board);
+    random = null;
+    boolean applied = false;
+    try {
+      applied = step.getAsBoolean();
+    } finally {
+      if (!applied) {
+        restore(token);
+      }
+    }
+    if (!applied) {
+      return null;
+    }
+    token.appliedRecords = actionRecords;
+    return token;
+  }
+
+  /**
+   * Resolves a whole battle in one step. The attack is repeated round after round, each time with
+   * as many of the given troops as are still allowed to attack, until the defending territory is
+   * conquered or the attacking territory cannot attack anymore. The outcome is sampled at once from
+   * the BattleOracle and applied to the board in a single update. The history records the attack
+   * followed by the RiskAction.battleCasualties() of the whole battle, replaying these two actions
+   * restores the same state. Only with fortifyOnlyWithNonFightingArmies, which keeps track of the
+   * troops fighting in every round, the rounds are played and recorded one by one, but no game is
+   * created per round.
+   *
+   * @param attack - the attack to repeat
+   * @return the game after the battle, null if the current player is not attacking or the action
+   *     is not an attack
+   * @throws IllegalArgumentException if the attack is not valid
+   */
+  public Risk blitz(RiskAction attack) {
+    if (attack == null) {
+      throw new IllegalArgumentException("Found null");
+    }
+    if (isGameOver()) {
+      throw new IllegalArgumentException("Game is over");
+    }
+    Risk next = new Risk(this);
+    return next.blitzInPlace(attack) ? next : null;
+  }
+
+  /**
+   * Resolves a whole battle like blitz() but applies it to this game like apply().
+   *
+   * @param attack - the attack to repeat
+   * @return a token to undo the whole battle, null if the current player is not attacking or the
+   *     action is not an attack
+   * @throws IllegalArgumentException if the attack is not valid, the game is left unchanged
+   */
+  public UndoToken applyBlitz(RiskAction attack) {
+    if (attack == null) {
+      throw new IllegalArgumentException("Found null");
+    }
+    if (isGameOver()) {
+      throw new IllegalArgumentException("Game is over");
+    }
+    return applyInPlace(() -> blitzInPlace(attack));
+  }
+
+  private boolean blitzInPlace(RiskAction attack) {
+    final int player = currentPlayerId;
+    if (player < 0 || isInitialSelect() || isInitialReinforce() || !board.isAttackPhase()
+        || board.hasToTradeInCards(player) || attack.isEndPhase() || attack.isCardIds()) {
+      return false;
+    }
+    if (!board.isFortifyOnlyWithNonFightingArmies()) {
+      doActionInPlace(attack);
+      doActionInPlace(calculateBattleCasualties());
+      return true;
+    }
+    final int attackingId = attack.attackingId();
+    final int defendingId = attack.defendingId();
+    RiskAction round = attack;
+    do {
+      doActionInPlace(round);
+      doActionInPlace(calculateCasualties());
+      int troops = Math.min(attack.troops(), board.getMaxAttackingTroops(attackingId));
+      if (troops <= 0 || currentPlayerId != player || !board.isAttackPhase()
+          || board.getTerritoryOccupantId(defendingId) == player || isGameOver()) {
+        break;
+      }
+      round = RiskAction.attack(attackingId, defendingId, troops);
+    } while (true);
+    return true;
+  }
+
+  /**
+   * Restores the state before the action the token was obtained for was applied.
+   *
+   * @param token - the token returned by apply()
+   * @throws IllegalArgumentException if the token does not belong to this game or is not the most
+   *                                  recent one
+   */
+  public void undo(UndoToken token) {
+    if (token == null || token.game != this || token.appliedRecords != actionRecords) {
+      throw new IllegalArgumentException("Token is not the most recent one of this game");
+    }
+    restore(token);
+  }
+
+  private void restore(UndoToken token) {
+    board = token.board;
+    currentPlayerId = token.currentPlayerId;
+    actionRecords = token.actionRecords;
+    random = token.random;
+  }
+
+  private boolean doActionInPlace(RiskAction riskAction) {
+    final int player = currentPlayerId;
     if (currentPlayerId < 0) {
       if (board.isAttack()) {
-        next = casualtiesDA(riskAction);
+        casualtiesDA(riskAction);
       } else if (currentPlayerId == BONUS_PLAYER) {
-        next = bonusDA(riskAction);
+        bonusDA(riskAction);
+      } else {
+        return false;
       }
     } else if (isInitialSelect()) {
-      next = initialSelectDA(riskAction);
+      initialSelectDA(riskAction);
     } else if (isInitialReinforce()) {
-      next = initialReinforceDA(riskAction);
+      initialReinforceDA(riskAction);
     } else if (board.allowedToTradeIn(currentPlayerId) && riskAction.isCardIds()) {
-      next = tradeInDA(riskAction);
+      tradeInDA(riskAction);
     } else if (board.isReinforcementPhase()) {
-      next = reinforceDA(riskAction);
+      reinforceDA(riskAction);
     } else if (board.isAttackPhase()) {
-      next = attackDA(riskAction);
+      attackDA(riskAction);
     } else if (board.isOccupyPhase()) {
-      next = occupyDA(riskAction);
+      occupyDA(riskAction);
     } else if (board.isFortifyPhase()) {
-      next = fortifyDA(riskAction);
+      fortifyDA(riskAction);
+    } else {
+      return false;
     }
 
-    if (next != null) {
-      next.actionRecords.add(new ActionRecord<>(this.currentPlayerId, riskAction));
-    }
-    return next;
+    actionRecords = actionRecords.append(new ActionRecord<>(player, riskAction));
+    return true;
+  }
+
+  /**
+   * Applies the action an action code generated by generateActions() or RiskAction.toLong()
+   * stands for. Equivalent to doAction(RiskAction.fromLong(code)).
+   *
+   * @param code - the action code
+   * @return the game after the action was applied
+   */
+  public Risk doAction(long code) {
+    return (Risk) doAction(toAction(code));
   }
 
-  private Risk initialSelectDA(RiskAction riskAction) {
+  private void initialSelectDA(RiskAction riskAction) {
     int selected = riskAction.selected();
 
     if (!board.isTerritory(selected)) {
@@ -464,24 +872,21 @@ public class Risk implements Game<RiskAction, RiskBoard> {
           "Specified territoryId has already an occupant, could therefore not select");
     }
 
-    Risk next = new Risk(this);
-    next.board.initialSelect(selected, next.currentPlayerId);
-    next.currentPlayerId =
-        (next.currentPlayerId + (getNumberOfPlayers() - 1)) % getNumberOfPlayers();
+    board.initialSelect(selected, currentPlayerId);
+    currentPlayerId =
+        (currentPlayerId + (getNumberOfPlayers() - 1)) % getNumberOfPlayers();
 
-    if (!next.isInitialSelect()) {
-      if (next.isInitialReinforce()) {
-        next.currentPlayerId = 0;
+    if (!isInitialSelect()) {
+      if (isInitialReinforce()) {
+        currentPlayerId = 0;
       } else {
-        next.currentPlayerId = 1;
-        next.board.endMove(1);
+        currentPlayerId = 1;
+        board.endMove(1);
       }
     }
-
-    return next;
   }
 
-  private Risk initialReinforceDA(RiskAction riskAction) {
+  private void initialReinforceDA(RiskAction riskAction) {
     int reinforcedId = riskAction.reinforcedId();
     int troops = riskAction.troops();
     {
@@ -504,20 +909,17 @@ public class Risk implements Game<RiskAction, RiskBoard> {
         throw new IllegalArgumentException(errorMsg.concat(", could therefore not reinforce"));
       }
     }
-    Risk next = new Risk(this);
-    next.board.reinforce(currentPlayerId, reinforcedId, troops);
+    board.reinforce(currentPlayerId, reinforcedId, troops);
 
-    if (next.isInitialReinforce()) {
+    if (isInitialReinforce()) {
       do {
-        next.currentPlayerId =
-            (next.currentPlayerId + (getNumberOfPlayers() - 1)) % getNumberOfPlayers();
-      } while (next.board.reinforcementsLeft(next.currentPlayerId) <= 0);
+        currentPlayerId =
+            (currentPlayerId + (getNumberOfPlayers() - 1)) % getNumberOfPlayers();
+      } while (board.reinforcementsLeft(currentPlayerId) <= 0);
     } else {
-      next.currentPlayerId = 1;
-      next.board.endMove(1);
+      currentPlayerId = 1;
+      board.endMove(1);
     }
-
-    return next;
   }
 
   private int nextPlayerId(int player) {
@@ -534,7 +936,7 @@ public class Risk implements Game<RiskAction, RiskBoard> {
     return nextPlayerId(currentPlayerId);
   }
 
-  private Risk tradeInDA(RiskAction riskAction) {
+  private void tradeInDA(RiskAction riskAction) {
 
     Set<Integer> cardIds = riskAction.playedCards();
     if (!board.allowedToTradeIn(currentPlayerId)) {
@@ -548,16 +950,13 @@ public class Risk implements Game<RiskAction, RiskBoard> {
               Collectors.joining(", ")) + "] cannot be traded in as a set");
     }
 
-    Risk next = new Risk(this);
 
-    next.board.tradeIn(cardIds, next.currentPlayerId);
+    board.tradeIn(cardIds, currentPlayerId);
 
-    next.currentPlayerId = Risk.BONUS_PLAYER;
-
-    return next;
+    currentPlayerId = Risk.BONUS_PLAYER;
   }
 
-  private Risk bonusDA(RiskAction riskAction) {
+  private void bonusDA(RiskAction riskAction) {
     if (!riskAction.isBonus()) {
       throw new IllegalArgumentException("Action does not determine bonus.");
     }
@@ -566,15 +965,12 @@ public class Risk implements Game<RiskAction, RiskBoard> {
       throw new IllegalArgumentException("Not correct amount of bonus for trade in.");
     }
 
-    Risk next = new Risk(this);
-
-    next.currentPlayerId = next.board.getTradedInId();
-    next.board.awardBonus(riskAction.getBonus(), next.currentPlayerId);
 
-    return next;
+    currentPlayerId = board.getTradedInId();
+    board.awardBonus(riskAction.getBonus(), currentPlayerId);
   }
 
-  private Risk reinforceDA(RiskAction riskAction) {
+  private void reinforceDA(RiskAction riskAction) {
     int reinforcedId = riskAction.reinforcedId();
     int troops = riskAction.troops();
     {
@@ -615,23 +1011,19 @@ public class Risk implements Game<RiskAction, RiskBoard> {
       }
     }
 
-    Risk next = new Risk(this);
 
-    next.board.reinforce(next.currentPlayerId, reinforcedId, troops);
-    if (next.board.reinforcementsLeft(currentPlayerId) == 0) {
-      next.board.endReinforcementPhase();
+    board.reinforce(currentPlayerId, reinforcedId, troops);
+    if (board.reinforcementsLeft(currentPlayerId) == 0) {
+      board.endReinforcementPhase();
     }
 
-    return next;
-
   }
 
-  private Risk attackDA(RiskAction riskAction) {
+  private void attackDA(RiskAction riskAction) {
     int attackingId = riskAction.attackingId();
     int defendingId = riskAction.defendingId();
     int troops = riskAction.troops();
 
-    Risk next = new Risk(this);
     if (!riskAction.isEndPhase()) {
       String errorMsg = "";
       if (!(board.isTerritory(attackingId) && board.isTerritory(defendingId))) {
@@ -663,19 +1055,26 @@ public class Risk implements Game<RiskAction, RiskBoard> {
         throw new IllegalArgumentException(errorMsg.concat(", could therefore not attack"));
       }
 
-      next.currentPlayerId = CASUALTIES_PLAYER;
+      currentPlayerId = CASUALTIES_PLAYER;
 
-      next.board.startAttack(attackingId, defendingId, troops);
+      board.startAttack(attackingId, defendingId, troops);
     } else {
-      next.board.endAttackPhase();
+      board.endAttackPhase();
     }
-
-    return next;
   }
 
-  private Risk casualtiesDA(RiskAction riskAction) {
+  private void casualtiesDA(RiskAction riskAction) {
     int attackerCasualties = riskAction.attackerCasualties();
     int defenderCasualties = riskAction.defenderCasualties();
+    if (riskAction.isBattleCasualties()) {
+      if (!board.isBattleOutcome(attackerCasualties, defenderCasualties)) {
+        throw new IllegalArgumentException(
+            attackerCasualties + " attacking casualties and " + defenderCasualties
+                + " do not decide the battle, could therefore not subtract casualties");
+      }
+      currentPlayerId = board.endBattle(attackerCasualties, defenderCasualties);
+      return;
+    }
     {
       int armiesFought = Math.min(board.getNrOfAttackerDice(), board.getNrOfDefenderDice());
 
@@ -687,31 +1086,25 @@ public class Risk implements Game<RiskAction, RiskBoard> {
 
     }
 
-    Risk next = new Risk(this);
-    next.currentPlayerId = next.board.endAttack(attackerCasualties, defenderCasualties);
-    return next;
+    currentPlayerId = board.endAttack(attackerCasualties, defenderCasualties);
   }
 
-  private Risk occupyDA(RiskAction riskAction) {
+  private void occupyDA(RiskAction riskAction) {
     if (!(1 <= riskAction.troops() && riskAction.troops() <= board.getMaxOccupy())) {
       throw new IllegalArgumentException(
           riskAction.troops() + " is an illegal number of troops, could therefore not occupy");
     }
 
-    Risk next = new Risk(this);
-    next.board.occupy(riskAction.troops());
-
-    return next;
+    board.occupy(riskAction.troops());
   }
 
-  private Risk fortifyDA(RiskAction riskAction) {
+  private void fortifyDA(RiskAction riskAction) {
     int fortifyingId = riskAction.fortifyingId();
     int fortifiedId = riskAction.fortifiedId();
     int troops = riskAction.troops();
 
-    Risk next = new Risk(this);
     if (riskAction.isEndPhase()) {
-      next.endMove();
+      endMove();
     } else {
       {
         StringBuilder errorMsg = new StringBuilder();
@@ -760,18 +1153,16 @@ public class Risk implements Game<RiskAction, RiskBoard> {
         }
       }
 
-      next.board.fortify(fortifyingId, fortifiedId, troops);
+      board.fortify(fortifyingId, fortifiedId, troops);
 
-      if (next.board.isFortifyOnlyFromSingleTerritory()) {
-        next.endMove();
+      if (board.isFortifyOnlyFromSingleTerritory()) {
+        endMove();
       }
     }
-
-    return next;
   }
 
   private void endMove() {
-    this.board.drawCardIfPossible(this.currentPlayerId);
+    this.board.drawCardIfPossible(this.currentPlayerId, random());
     this.currentPlayerId = nextPlayerId();
     this.board.endMove(this.currentPlayerId);
   }
@@ -791,29 +1182,78 @@ public class Risk implements Game<RiskAction, RiskBoard> {
     return null;
   }
 
-  private RiskAction calculateCasualties() {
-    int attacker = board.getNrOfAttackerDice();
-    int defender = board.getNrOfDefenderDice();
+  /**
+   * Returns the actions of the chance player together with their exact probability. The
+   * probabilities sum up to one. If the current player is not a chance player the map is empty.
+   *
+   * @return the possible chance actions mapped to their probability, in ascending order of value
+   */
+  public Map<RiskAction, Double> getChanceActions() {
+    Map<RiskAction, Double> chanceActions = new LinkedHashMap<>();
+    if (currentPlayerId >= 0 || isGameOver()) {
+      return chanceActions;
+    }
+    if (board.isAttack()) {
+      int attackerDice = board.getNrOfAttackerDice();
+      int defenderDice = board.getNrOfDefenderDice();
+      int compareDice = Math.min(attackerDice, defenderDice);
+      BattleOdds battleOdds = board.getBattleOdds();
+      for (int attacker = 0; attacker <= compareDice; attacker++) {
+        double probability = battleOdds.getProbability(attackerDice, defenderDice, attacker);
+        if (probability > 0D) {
+          chanceActions.put(RiskAction.casualties(attacker, compareDice - attacker), probability);
+        }
+      }
+    } else if (currentPlayerId == BONUS_PLAYER) {
+      int min = board.getMinMatchingTerritories();
+      int max = board.getMaxMatchingTerritories();
+      int drawn = max - min;
+      int nrOfCardsInPool = (board.getNumberOfCards() + drawn) - (board.getNrOfDiscardedCards()
+          + board.getNrOfPlayerCards(board.getTradedInId()));
+      // calculateBonus() draws drawn cards out of the pool, drawn of which are matching
+      for (int matching = 0; matching <= drawn; matching++) {
+        double probability = hypergeometric(nrOfCardsInPool, drawn, drawn, matching);
+        if (probability > 0D) {
+          chanceActions.put(RiskAction.bonusTroopsFromCards(min + matching), probability);
+        }
+      }
+    }
+    return chanceActions;
+  }
 
-    int compareDice = Math.min(attacker, defender);
-    attackerDice.rollN(attacker);
-    defenderDice.rollN(defender);
+  private static double hypergeometric(int population, int successes, int draws, int k) {
+    if (k < 0 || k > successes || k > draws || draws - k > population - successes) {
+      return 0D;
+    }
+    return Math.exp(logBinomial(successes, k) + logBinomial(population - successes, draws - k)
+        - logBinomial(population, draws));
+  }
 
-    attackerDice.sortReverse();
-    defenderDice.sortReverse();
+  private static double logBinomial(int n, int k) {
+    double logBinomial = 0D;
+    for (int i = 1; i <= k; i++) {
+      logBinomial += Math.log(n - k + i) - Math.log(i);
+    }
+    return logBinomial;
+  }
 
-    attacker = 0;
-    defender = 0;
+  private RiskAction calculateCasualties() {
+    int attackerDice = board.getNrOfAttackerDice();
+    int defenderDice = board.getNrOfDefenderDice();
+    int compareDice = Math.min(attackerDice, defenderDice);
+    int attacker = board.getBattleOdds()
+        .sampleAttackerCasualties(attackerDice, defenderDice, random());
 
-    for (int die = 0; die < compareDice; die++) {
-      if (attackerDice.getFaceOf(die) > defenderDice.getFaceOf(die)) {
-        defender++;
-      } else {
-        attacker++;
-      }
-    }
+    return RiskAction.casualties(attacker, compareDice - attacker);
+  }
+
+  private RiskAction calculateBattleCasualties() {
+    int attackers = board.getMobileTroops(board.getAttackingId());
+    int defenders = board.getTerritoryTroops(board.getDefendingId());
+    int survivors = board.sampleBattleSurvivors(random());
 
-    return RiskAction.casualties(attacker, defender);
+    return survivors > 0 ? RiskAction.battleCasualties(attackers - survivors, defenders)
+        : RiskAction.battleCasualties(attackers, defenders + survivors);
   }
 
   private RiskAction calculateBonus() {
@@ -826,14 +1266,14 @@ public class Risk implements Game<RiskAction, RiskBoard> {
 
     int drawn = max - min;
     int nrOfCardsInPool =
-        (board.getNumberOfCards() + drawn) - (board.getDiscardedPile().size() + board
-            .getPlayerCards(board.getTradedInId()).size());
+        (board.getNumberOfCards() + drawn) - (board.getNrOfDiscardedCards()
+            + board.getNrOfPlayerCards(board.getTradedInId()));
 
     int bonus = min;
 
     List<Integer> pool = IntStream.range(0, nrOfCardsInPool).boxed()
         .collect(Collectors.toCollection(LinkedList::new));
-    Collections.shuffle(pool);
+    RiskBoard.shuffle(pool, random());
 
     for (int i = 0; i < drawn; i++) {
       if (pool.get(i) < drawn) {
@@ -871,12 +1311,12 @@ public class Risk implements Game<RiskAction, RiskBoard> {
   public String toTextRepresentation() {
     //TODO: untangle this mess
     StringBuilder map = new StringBuilder(board.getMap());
-    final Map<Integer, RiskTerritory> territories = board.getTerritories();
 
-    for (Integer i : territories.keySet()) {
+    for (int index = 0; index < board.getNumberOfTerritories(); index++) {
+      int i = board.getTerritoryIdAt(index);
       String target = "[" + i + "]";
-      int occupantPlayerId = territories.get(i).getOccupantPlayerId();
-      int troops = territories.get(i).getTroops();
+      int occupantPlayerId = board.getTerritoryOccupantIdAt(index);
+      int troops = board.getTerritoryTroopsAt(index);
       String troopsString = String.valueOf(troops);
       if (troops >= 1000) {
         troops /= 1000;
@@ -961,11 +1401,10 @@ public class Risk implements Game<RiskAction, RiskBoard> {
     }
     map.append('\n');
     for (int p = 0; p < getNumberOfPlayers(); p++) {
-      Set<Integer> playerTerritoryIds = board.getTerritoriesOccupiedByPlayer(p);
-      int playerTroops = playerTerritoryIds.stream().mapToInt(board::getTerritoryTroops).sum();
       map.append("Player ").append(p).append(':').append('\n')
-          .append('\t').append("Territories: ").append(playerTerritoryIds.size()).append('\n')
-          .append('\t').append("Troops: ").append(playerTroops).append('\n');
+          .append('\t').append("Territories: ").append(board.getNrOfTerritoriesOccupiedByPlayer(p))
+          .append('\n')
+          .append('\t').append("Troops: ").append(board.getNrOfTroopsOfPlayer(p)).append('\n');
     }
     map.deleteCharAt(map.length() - 1);
     return map.toString();
@@ -986,4 +1425,27 @@ public class Risk implements Game<RiskAction, RiskBoard> {
     return stringBuilder.toString();
   }
 
+  /**
+   * Remembers the state of a game before an action was applied with Risk.apply(). The board is kept
+   * as a whole, the board after the action never writes to it.
+   */
+  public static final class UndoToken {
+
+    private final Risk game;
+    private final RiskBoard board;
+    private final int currentPlayerId;
+    private final ActionHistory actionRecords;
+    private final SplittableRandom random;
+    private ActionHistory appliedRecords;
+
+    private UndoToken(Risk game, RiskBoard board, int currentPlayerId,
+        ActionHistory actionRecords, SplittableRandom random) {
+      this.game = game;
+      this.board = board;
+      this.currentPlayerId = currentPlayerId;
+      this.actionRecords = actionRecords;
+      this.random = random;
+    }
+  }
+
 }
@@ -1,18 +1,51 @@
 package at.ac.tuwien.ifs.sge.game.risk.board;
 
 import java.util.Arrays;
-import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class RiskAction {
 
   private static final RiskAction END_PHASE = new RiskAction(-2, -4, -8);
-  private static final int CASUALTIES_ID = -1;
-  private static final int OCCUPY_ID = -2;
-  private static final int CARD_ID = -3;
-  private static final int BONUS_ID = -4;
+  static final int NO_ID = -1;
+  static final int CASUALTIES_ID = -1;
+  static final int OCCUPY_ID = -2;
+  static final int CARD_ID = -3;
+  static final int BONUS_ID = -4;
+  static final int BATTLE_ID = -5;
+  static final long END_PHASE_CODE = pack(END_PHASE.srcId, END_PHASE.targetId, END_PHASE.value);
+
+  /*
+   * Canonical instances of the most common actions. Rows are indexed by the value of the action and
+   * are always completely filled, they are only ever replaced by longer copies of themselves. This
+   * way every action within the cached range has exactly one instance. There are thousands of
+   * territory rows, so they are bounded much tighter than the few marker rows, larger values are
+   * allocated on every call.
+   */
+  private static final int CACHED_IDS = 64;
+  private static final int MAX_CACHED_VALUE = 1 << 12;
+  private static final int MAX_CACHED_TERRITORY_VALUE = 1 << 6;
+  private static final int INITIAL_ROW_LENGTH = 8;
+  private static final int CACHED_CASUALTIES = 8;
+  private static final AtomicReferenceArray<RiskAction[]> TERRITORY_PAIR_ACTIONS =
+      new AtomicReferenceArray<>(CACHED_IDS * CACHED_IDS);
+  private static final AtomicReferenceArray<RiskAction[]> TERRITORY_ACTIONS =
+      new AtomicReferenceArray<>(CACHED_IDS);
+  private static final AtomicReferenceArray<RiskAction[]> MARKER_ACTIONS =
+      new AtomicReferenceArray<>(-BONUS_ID);
+  private static final RiskAction[][] CASUALTIES_ACTIONS = new RiskAction[CACHED_CASUALTIES][];
+
+  static {
+    for (int attacker = 0; attacker < CACHED_CASUALTIES; attacker++) {
+      CASUALTIES_ACTIONS[attacker] = new RiskAction[CACHED_CASUALTIES];
+      for (int defender = 0; defender < CACHED_CASUALTIES; defender++) {
+        CASUALTIES_ACTIONS[attacker][defender] = new RiskAction(CASUALTIES_ID, CASUALTIES_ID,
+            casualtiesValue(attacker, defender));
+      }
+    }
+  }
 
   private final int srcId;
   private final int targetId;
@@ -24,18 +57,6 @@ public class RiskAction {
     this.value = value;
   }
 
-  private RiskAction(int targetId, int value) {
-    this.srcId = -1;
-    this.targetId = targetId;
-    this.value = value;
-  }
-
-  private RiskAction(int value) {
-    this.srcId = -1;
-    this.targetId = -1;
-    this.value = value;
-  }
-
   /**
    * Used in the territory selection phase. Claims the specified id.
    *
@@ -43,7 +64,7 @@ public class RiskAction {
    * @return an action modelling the selection of a territory
    */
   public static RiskAction select(int id) {
-    return new RiskAction(id, 1);
+    return of(NO_ID, id, 1);
   }
 
   /**
@@ -55,7 +76,7 @@ public class RiskAction {
    * @return an action modelling the reinforcement of a territory with a number of troops
    */
   public static RiskAction reinforce(int id, int troops) {
-    return new RiskAction(id, troops);
+    return of(NO_ID, id, troops);
   }
 
   /**
@@ -69,7 +90,7 @@ public class RiskAction {
    * troops
    */
   public static RiskAction attack(int attackingId, int defendingId, int troops) {
-    return new RiskAction(attackingId, defendingId, troops);
+    return of(attackingId, defendingId, troops);
   }
 
   /**
@@ -80,7 +101,7 @@ public class RiskAction {
    * @return an action modelling using a number of troops to occupy a just captured territory
    */
   public static RiskAction occupy(int troops) {
-    return new RiskAction(OCCUPY_ID, OCCUPY_ID, troops);
+    return of(OCCUPY_ID, OCCUPY_ID, troops);
   }
 
   /**
@@ -94,7 +115,7 @@ public class RiskAction {
    * another territory
    */
   public static RiskAction fortify(int fortifyingId, int fortifiedId, int troops) {
-    return new RiskAction(fortifyingId, fortifiedId, troops);
+    return of(fortifyingId, fortifiedId, troops);
   }
 
   /**
@@ -114,8 +135,23 @@ public class RiskAction {
    * @return an action modelling the casualties of each player
    */
   public static RiskAction casualties(int attacker, int defender) {
-    return new RiskAction(CASUALTIES_ID, CASUALTIES_ID,
-        attacker | (defender << (Integer.SIZE / 2)));
+    return of(CASUALTIES_ID, CASUALTIES_ID, casualtiesValue(attacker, defender));
+  }
+
+  /**
+   * Used by Risk.blitz(). Sums how many casualties each player has over all rounds of a battle
+   * which is resolved at once.
+   *
+   * @param attacker - the number of troops lost for the attacker
+   * @param defender - the number of troops lost for the defender
+   * @return an action modelling the casualties of each player in a whole battle
+   */
+  public static RiskAction battleCasualties(int attacker, int defender) {
+    return of(BATTLE_ID, BATTLE_ID, casualtiesValue(attacker, defender));
+  }
+
+  static int casualtiesValue(int attacker, int defender) {
+    return attacker | (defender << (Integer.SIZE / 2));
   }
 
   /**
@@ -129,7 +165,7 @@ public class RiskAction {
    * @return an action modelling the trade in of the cards in the specified card slots
    */
   public static RiskAction cardSlots(int id) {
-    return new RiskAction(CARD_ID, CARD_ID, id);
+    return of(CARD_ID, CARD_ID, id);
   }
 
   /**
@@ -140,7 +176,7 @@ public class RiskAction {
    * @return an action modelling the trade in of the cards in the specified card slots
    */
   public static RiskAction playCards(int... ids) {
-    return new RiskAction(CARD_ID, CARD_ID, idsToSlotIds(ids));
+    return of(CARD_ID, CARD_ID, idsToSlotIds(ids));
   }
 
   /**
@@ -151,7 +187,7 @@ public class RiskAction {
    * @return an action modelling the trade in of the cards in the specified card slots
    */
   public static RiskAction playCards(Iterable<Integer> ids) {
-    return new RiskAction(CARD_ID, CARD_ID, idsToSlotIds(ids));
+    return of(CARD_ID, CARD_ID, idsToSlotIds(ids));
   }
 
   /**
@@ -162,7 +198,7 @@ public class RiskAction {
    * @return an action modelling the award of a number of troops after trade in
    */
   public static RiskAction bonusTroopsFromCards(int nr) {
-    return new RiskAction(BONUS_ID, BONUS_ID, nr);
+    return of(BONUS_ID, BONUS_ID, nr);
   }
 
   /**
@@ -247,7 +283,7 @@ public class RiskAction {
 
   /**
    * Returns how many casualties the attacker had. Note that this method only has defined behaviour
-   * if it was created using RiskAction.casualties().
+   * if it was created using RiskAction.casualties() or RiskAction.battleCasualties().
    *
    * @return how many casualties the attacker had
    */
@@ -257,7 +293,7 @@ public class RiskAction {
 
   /**
    * Returns how many casualties the defender had. Note that this method only has defined behaviour
-   * if it was created using RiskAction.casualties().
+   * if it was created using RiskAction.casualties() or RiskAction.battleCasualties().
    *
    * @return how many casualties the defender had
    */
@@ -302,6 +338,54 @@ public class RiskAction {
     return srcId == BONUS_ID && targetId == BONUS_ID;
   }
 
+  /**
+   * Returns true iff the action models the casualties of a whole battle.
+   *
+   * @return true iff the action models the casualties of a whole battle
+   */
+  public boolean isBattleCasualties() {
+    return srcId == BATTLE_ID && targetId == BATTLE_ID;
+  }
+
+  int getSrcId() {
+    return srcId;
+  }
+
+  int getTargetId() {
+    return targetId;
+  }
+
+  int getValue() {
+    return value;
+  }
+
+  /**
+   * Returns a binary encoding of this action as a single long. The encoding is stable and can be
+   * decoded with RiskAction.fromLong(). It refers to territories by their id, never by their index
+   * on a board, and is the same encoding Risk.generateActions() writes, so codes of either source
+   * can be passed to Risk.doAction(long). Note that territory ids have to fit into a short to be
+   * encodable, use RiskActionCodec for actions with arbitrary ids.
+   *
+   * @return this action encoded into a long
+   * @throws IllegalStateException if a territory id of this action does not fit into a short
+   */
+  public long toLong() {
+    if (srcId != (short) srcId || targetId != (short) targetId) {
+      throw new IllegalStateException("Action " + this + " cannot be encoded into a long");
+    }
+    return pack(srcId, targetId, value);
+  }
+
+  /**
+   * Returns the action encoded by RiskAction.toLong() or written by Risk.generateActions().
+   *
+   * @param code - the encoded action
+   * @return the action the code stands for
+   */
+  public static RiskAction fromLong(long code) {
+    return of(unpackSrcId(code), unpackTargetId(code), unpackValue(code));
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -318,7 +402,7 @@ public class RiskAction {
 
   @Override
   public int hashCode() {
-    return Objects.hash(srcId, targetId, value);
+    return 31 * (31 * (31 + srcId) + targetId) + value;
   }
 
   @Override
@@ -331,6 +415,10 @@ public class RiskAction {
       return String.format("%dX%d", this.attackerCasualties(), this.defenderCasualties());
     }
 
+    if (srcId == targetId && srcId == BATTLE_ID) {
+      return String.format("%dXX%d", this.attackerCasualties(), this.defenderCasualties());
+    }
+
     if (srcId == targetId && srcId == OCCUPY_ID) {
       return "O" + value;
     }
@@ -360,6 +448,12 @@ public class RiskAction {
       int troops = Integer.parseInt(string.substring(1));
       return occupy(troops);
     }
+    if (string.contains("XX")) {
+      String[] casualties = string.split("XX");
+      int attacker = Integer.parseInt(casualties[0]);
+      int defender = Integer.parseInt(casualties[1]);
+      return battleCasualties(attacker, defender);
+    }
     if (string.contains("X")) {
       String[] casualties = string.split("X");
       int attacker = Integer.parseInt(casualties[0]);
@@ -415,7 +509,7 @@ public class RiskAction {
   }
 
 
-  private static int idsToSlotIds(Iterable<Integer> ids) {
+  static int idsToSlotIds(Iterable<Integer> ids) {
     int value = 0;
     for (int id : ids) {
       value |= (1 << id);
@@ -429,5 +523,88 @@ public class RiskAction {
         .boxed().collect(Collectors.toSet());
   }
 
+  /**
+   * Returns the canonical instance of the given action if it lies within the cached range, else a
+   * new instance.
+   */
+  static RiskAction of(int srcId, int targetId, int value) {
+    if (srcId == targetId && srcId == CASUALTIES_ID) {
+      int attacker = value & (~0 >>> (Integer.SIZE / 2));
+      int defender = value >>> (Integer.SIZE / 2);
+      if (attacker < CACHED_CASUALTIES && defender < CACHED_CASUALTIES) {
+        return CASUALTIES_ACTIONS[attacker][defender];
+      }
+    } else if (0 <= value && value < MAX_CACHED_VALUE) {
+      if (isCachedId(srcId) && isCachedId(targetId)) {
+        if (value < MAX_CACHED_TERRITORY_VALUE) {
+          return cached(TERRITORY_PAIR_ACTIONS, srcId * CACHED_IDS + targetId, srcId, targetId,
+              value, MAX_CACHED_TERRITORY_VALUE);
+        }
+      } else if (srcId == NO_ID && isCachedId(targetId)) {
+        if (value < MAX_CACHED_TERRITORY_VALUE) {
+          return cached(TERRITORY_ACTIONS, targetId, srcId, targetId, value,
+              MAX_CACHED_TERRITORY_VALUE);
+        }
+      } else if (srcId == targetId && BONUS_ID <= srcId && srcId < 0) {
+        return cached(MARKER_ACTIONS, -srcId - 1, srcId, targetId, value, MAX_CACHED_VALUE);
+      }
+    } else if (srcId == END_PHASE.srcId && targetId == END_PHASE.targetId
+        && value == END_PHASE.value) {
+      return END_PHASE;
+    }
+    return new RiskAction(srcId, targetId, value);
+  }
+
+  private static boolean isCachedId(int id) {
+    return 0 <= id && id < CACHED_IDS;
+  }
+
+  private static RiskAction cached(AtomicReferenceArray<RiskAction[]> table, int row, int srcId,
+      int targetId, int value, int maxValue) {
+    RiskAction[] actions = table.get(row);
+    while (actions == null || actions.length <= value) {
+      int length = actions == null ? INITIAL_ROW_LENGTH : actions.length;
+      while (length <= value) {
+        length *= 2;
+      }
+      RiskAction[] extended = new RiskAction[Math.min(length, maxValue)];
+      int cached = 0;
+      if (actions != null) {
+        System.arraycopy(actions, 0, extended, 0, actions.length);
+        cached = actions.length;
+      }
+      for (int v = cached; v < extended.length; v++) {
+        extended[v] = new RiskAction(srcId, targetId, v);
+      }
+      if (table.compareAndSet(row, actions, extended)) {
+        actions = extended;
+      } else {
+        actions = table.get(row);
+      }
+    }
+    return actions[value];
+  }
+
+  /**
+   * Packs the fields of an action into a single long. The upper two 16 bit words hold srcId and
+   * targetId as signed shorts, the lower 32 bits hold the value unchanged.
+   */
+  static long pack(int srcId, int targetId, int value) {
+    return ((long) (srcId & 0xFFFF) << 48) | ((long) (targetId & 0xFFFF) << 32)
+        | (value & 0xFFFFFFFFL);
+  }
+
+  static int unpackSrcId(long code) {
+    return (short) (code >>> 48);
+  }
+
+  static int unpackTargetId(long code) {
+    return (short) (code >>> 32);
+  }
+
+  static int unpackValue(long code) {
+    return (int) code;
+  }
+
 
 }
@@ -0,0 +1,138 @@
+package at.ac.tuwien.ifs.sge.game.risk.board;
+
+import at.ac.tuwien.ifs.sge.game.ActionRecord;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of whole action histories. Each record is stored as the player followed by the
+ * srcId, targetId and value of its action, every field as a zigzag encoded variable length integer.
+ * Typical records take four to six bytes. The encoding is lossless for any action and player.
+ */
+public final class RiskActionCodec {
+
+  private static final byte VERSION = 1;
+
+  private RiskActionCodec() {
+  }
+
+  /**
+   * Returns the number of bytes needed to encode the given history.
+   *
+   * @param actionRecords - the history
+   * @return the number of bytes encode() will write
+   */
+  public static int encodedLength(List<ActionRecord<RiskAction>> actionRecords) {
+    int length = 1 + varIntLength(actionRecords.size());
+    for (ActionRecord<RiskAction> actionRecord : actionRecords) {
+      RiskAction action = actionRecord.getAction();
+      length += varIntLength(zigzag(actionRecord.getPlayer()))
+          + varIntLength(zigzag(action.getSrcId()))
+          + varIntLength(zigzag(action.getTargetId()))
+          + varIntLength(zigzag(action.getValue()));
+    }
+    return length;
+  }
+
+  /**
+   * Encodes the given history into a new buffer of exactly the required size. The returned buffer
+   * is flipped, i.e. ready to be read.
+   *
+   * @param actionRecords - the history
+   * @return a buffer containing the encoded history
+   */
+  public static ByteBuffer encode(List<ActionRecord<RiskAction>> actionRecords) {
+    ByteBuffer buffer = ByteBuffer.allocate(encodedLength(actionRecords));
+    encode(actionRecords, buffer);
+    return buffer.flip();
+  }
+
+  /**
+   * Encodes the given history into the buffer, starting at its current position.
+   *
+   * @param actionRecords - the history
+   * @param buffer - the buffer to write to
+   * @throws BufferOverflowException if the remaining space is less than encodedLength()
+   */
+  public static void encode(List<ActionRecord<RiskAction>> actionRecords, ByteBuffer buffer) {
+    buffer.put(VERSION);
+    putVarInt(buffer, actionRecords.size());
+    for (ActionRecord<RiskAction> actionRecord : actionRecords) {
+      RiskAction action = actionRecord.getAction();
+      putVarInt(buffer, zigzag(actionRecord.getPlayer()));
+      putVarInt(buffer, zigzag(action.getSrcId()));
+      putVarInt(buffer, zigzag(action.getTargetId()));
+      putVarInt(buffer, zigzag(action.getValue()));
+    }
+  }
+
+  /**
+   * Decodes a history written by encode(), starting at the current position of the buffer.
+   *
+   * @param buffer - the buffer to read from
+   * @return the decoded history
+   * @throws IllegalArgumentException if the buffer does not contain an encoded history
+   * @throws BufferUnderflowException if the buffer ends before the history does
+   */
+  public static List<ActionRecord<RiskAction>> decode(ByteBuffer buffer) {
+    byte version = buffer.get();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unknown encoding version " + version);
+    }
+    int size = getVarInt(buffer);
+    if (size < 0) {
+      throw new IllegalArgumentException("Negative number of records");
+    }
+    List<ActionRecord<RiskAction>> actionRecords = new ArrayList<>(
+        Math.min(size, buffer.remaining() / 4));
+    for (int i = 0; i < size; i++) {
+      int player = unzigzag(getVarInt(buffer));
+      int srcId = unzigzag(getVarInt(buffer));
+      int targetId = unzigzag(getVarInt(buffer));
+      int value = unzigzag(getVarInt(buffer));
+      actionRecords.add(new ActionRecord<>(player, RiskAction.of(srcId, targetId, value)));
+    }
+    return actionRecords;
+  }
+
+  private static int zigzag(int n) {
+    return (n << 1) ^ (n >> 31);
+  }
+
+  private static int unzigzag(int n) {
+    return (n >>> 1) ^ -(n & 1);
+  }
+
+  private static int varIntLength(int n) {
+    int length = 1;
+    while ((n & ~0x7F) != 0) {
+      n >>>= 7;
+      length++;
+    }
+    return length;
+  }
+
+  private static void putVarInt(ByteBuffer buffer, int n) {
+    while ((n & ~0x7F) != 0) {
+      buffer.put((byte) ((n & 0x7F) | 0x80));
+      n >>>= 7;
+    }
+    buffer.put((byte) n);
+  }
+
+  private static int getVarInt(ByteBuffer buffer) {
+    int n = 0;
+    for (int shift = 0; shift < Integer.SIZE; shift += 7) {
+      byte b = buffer.get();
+      n |= (b & 0x7F) << shift;
+      if (b >= 0) {
+        return n;
+      }
+    }
+    throw new IllegalArgumentException("Malformed variable length integer");
+  }
+
+}
@@ -0,0 +1,335 @@
+package at.ac.tuwien.ifs.sge.game.risk.board;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * The possible actions of a state grouped into ranges. A group holds all actions with the same
+ * source and target whose values form a consecutive range, e.g. attacking a neighbor with 1 up to
+ * the maximum number of attacking troops. Groups are in the order in which generateActions() emits
+ * the actions, so the i-th action of the space is the i-th generated action code. Counting,
+ * indexing and sampling only look at the groups and never create the actions themselves. Iterating
+ * and streaming create the actions lazily one at a time, so stopping early skips the rest.
+ */
+public final class RiskActionSpace implements Iterable<RiskAction> {
+
+  private static final int INITIAL_GROUPS = 16;
+
+  private final int numberOfGroups;
+  private final long[] firstCodes;
+  private final int[] ends;
+
+  private RiskActionSpace(int numberOfGroups, long[] firstCodes, int[] ends) {
+    this.numberOfGroups = numberOfGroups;
+    this.firstCodes = firstCodes;
+    this.ends = ends;
+  }
+
+  /**
+   * Receives the possible actions of a state, either one at a time or as a range of values.
+   */
+  interface Sink {
+
+    void add(long code);
+
+    void addRange(int srcId, int targetId, int minValue, int maxValue);
+  }
+
+  static final class Builder implements Sink {
+
+    private int numberOfGroups;
+    private long[] firstCodes = new long[INITIAL_GROUPS];
+    private int[] ends = new int[INITIAL_GROUPS];
+
+    @Override
+    public void add(long code) {
+      addGroup(code, 1);
+    }
+
+    @Override
+    public void addRange(int srcId, int targetId, int minValue, int maxValue) {
+      if (minValue <= maxValue) {
+        addGroup(RiskAction.pack(srcId, targetId, minValue), maxValue - minValue + 1);
+      }
+    }
+
+    private void addGroup(long firstCode, int size) {
+      if (numberOfGroups == firstCodes.length) {
+        firstCodes = Arrays.copyOf(firstCodes, 2 * numberOfGroups);
+        ends = Arrays.copyOf(ends, 2 * numberOfGroups);
+      }
+      firstCodes[numberOfGroups] = firstCode;
+      ends[numberOfGroups] = (numberOfGroups > 0 ? ends[numberOfGroups - 1] : 0) + size;
+      numberOfGroups++;
+    }
+
+    RiskActionSpace build() {
+      return new RiskActionSpace(numberOfGroups, firstCodes, ends);
+    }
+  }
+
+  private void checkGroup(int group) {
+    if (group < 0 || group >= numberOfGroups) {
+      throw new IllegalArgumentException("There is no group " + group);
+    }
+  }
+
+  /**
+   * Return the number of possible actions.
+   *
+   * @return the number of actions
+   */
+  public int size() {
+    return numberOfGroups > 0 ? ends[numberOfGroups - 1] : 0;
+  }
+
+  /**
+   * Return true iff there are no possible actions.
+   *
+   * @return true iff the space is empty
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Return the number of groups the actions are divided into.
+   *
+   * @return the number of groups
+   */
+  public int getNumberOfGroups() {
+    return numberOfGroups;
+  }
+
+  /**
+   * Return the srcId shared by all actions of the given group. This is a territoryId for
+   * reinforcing, attacking and fortifying, special actions use negative markers.
+   *
+   * @param group - the index of the group
+   * @return the srcId of the actions in the group
+   */
+  public int getSrcId(int group) {
+    checkGroup(group);
+    return RiskAction.unpackSrcId(firstCodes[group]);
+  }
+
+  /**
+   * Return the targetId shared by all actions of the given group.
+   *
+   * @param group - the index of the group
+   * @return the targetId of the actions in the group
+   */
+  public int getTargetId(int group) {
+    checkGroup(group);
+    return RiskAction.unpackTargetId(firstCodes[group]);
+  }
+
+  /**
+   * Return the smallest value, i.e. number of troops, of the actions in the given group.
+   *
+   * @param group - the index of the group
+   * @return the smallest value in the group
+   */
+  public int getMinValue(int group) {
+    checkGroup(group);
+    return RiskAction.unpackValue(firstCodes[group]);
+  }
+
+  /**
+   * Return the largest value, i.e. number of troops, of the actions in the given group.
+   *
+   * @param group - the index of the group
+   * @return the largest value in the group
+   */
+  public int getMaxValue(int group) {
+    return getMinValue(group) + getGroupSize(group) - 1;
+  }
+
+  /**
+   * Return the number of actions in the given group.
+   *
+   * @param group - the index of the group
+   * @return the number of actions in the group
+   */
+  public int getGroupSize(int group) {
+    checkGroup(group);
+    return ends[group] - (group > 0 ? ends[group - 1] : 0);
+  }
+
+  /**
+   * Return the action code of the i-th action, see Risk.generateActions(long[]). The group is found
+   * by binary search over the groups.
+   *
+   * @param i - the index of the action
+   * @return the action code
+   */
+  public long getActionCode(int i) {
+    if (i < 0 || i >= size()) {
+      throw new IllegalArgumentException("There is no action " + i);
+    }
+    return codeAt(groupOf(i), i);
+  }
+
+  /**
+   * Returns the group containing the i-th action.
+   */
+  private int groupOf(int i) {
+    int group = Arrays.binarySearch(ends, 0, numberOfGroups, i);
+    return group >= 0 ? group + 1 : -group - 1;
+  }
+
+  private long codeAt(int group, int i) {
+    return firstCodes[group] + (i - (group > 0 ? ends[group - 1] : 0));
+  }
+
+  /**
+   * Return the i-th action.
+   *
+   * @param i - the index of the action
+   * @return the action
+   */
+  public RiskAction getAction(int i) {
+    return RiskAction.fromLong(getActionCode(i));
+  }
+
+  /**
+   * Returns an iterator creating the actions one at a time in the order of generateActions().
+   *
+   * @return an iterator over the actions
+   */
+  @Override
+  public Iterator<RiskAction> iterator() {
+    return Spliterators.iterator(spliterator());
+  }
+
+  /**
+   * Returns a spliterator creating the actions one at a time in the order of generateActions().
+   * It splits by index in constant time, so large spaces can be processed by parallel streams.
+   *
+   * @return a spliterator over the actions
+   */
+  @Override
+  public Spliterator<RiskAction> spliterator() {
+    return new ActionSpliterator(0, size());
+  }
+
+  /**
+   * Returns a sequential stream of the actions, see spliterator().
+   *
+   * @return a stream of the actions
+   */
+  public Stream<RiskAction> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * Returns a possibly parallel stream of the actions, see spliterator().
+   *
+   * @return a parallel stream of the actions
+   */
+  public Stream<RiskAction> parallelStream() {
+    return StreamSupport.stream(spliterator(), true);
+  }
+
+  /**
+   * Covers the actions from origin (inclusive) to fence (exclusive). The group of the next action
+   * is looked up once and then followed along.
+   */
+  private final class ActionSpliterator implements Spliterator<RiskAction> {
+
+    private static final int CHARACTERISTICS = ORDERED | DISTINCT | SIZED | SUBSIZED | NONNULL
+        | IMMUTABLE;
+
+    private int origin;
+    private final int fence;
+    private int group = -1;
+
+    private ActionSpliterator(int origin, int fence) {
+      this.origin = origin;
+      this.fence = fence;
+    }
+
+    private RiskAction next() {
+      if (group < 0) {
+        group = groupOf(origin);
+      }
+      while (ends[group] <= origin) {
+        group++;
+      }
+      return RiskAction.fromLong(codeAt(group, origin++));
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super RiskAction> action) {
+      if (origin >= fence) {
+        return false;
+      }
+      action.accept(next());
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super RiskAction> action) {
+      while (origin < fence) {
+        action.accept(next());
+      }
+    }
+
+    @Override
+    public Spliterator<RiskAction> trySplit() {
+      final int middle = (origin + fence) >>> 1;
+      if (middle <= origin) {
+        return null;
+      }
+      Spliterator<RiskAction> prefix = new ActionSpliterator(origin, middle);
+      origin = middle;
+      group = -1;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      return fence - origin;
+    }
+
+    @Override
+    public int characteristics() {
+      return CHARACTERISTICS;
+    }
+  }
+
+  /**
+   * Samples the action code of one of the actions uniformly at random.
+   *
+   * @param random - the source of randomness
+   * @return the action code of the sampled action
+   * @throws IllegalStateException if there are no actions
+   */
+  public long sampleActionCode(SplittableRandom random) {
+    if (isEmpty()) {
+      throw new IllegalStateException("No actions to sample from");
+    }
+    return getActionCode(random.nextInt(size()));
+  }
+
+  /**
+   * Samples one of the actions uniformly at random.
+   *
+   * @param random - the source of randomness
+   * @return the sampled action
+   * @throws IllegalStateException if there are no actions
+   */
+  public RiskAction sampleAction(SplittableRandom random) {
+    if (isEmpty()) {
+      throw new IllegalStateException("No actions to sample from");
+    }
+    return getAction(random.nextInt(size()));
+  }
+
+}
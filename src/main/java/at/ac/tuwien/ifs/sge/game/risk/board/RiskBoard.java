@@ -1,76 +1,57 @@
 package at.ac.tuwien.ifs.sge.game.risk.board;
 
 import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskConfiguration;
-import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskContinentConfiguration;
 import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskMissionConfiguration;
 import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskTerritoryConfiguration;
 import at.ac.tuwien.ifs.sge.game.risk.mission.RiskMission;
 import at.ac.tuwien.ifs.sge.game.risk.mission.RiskMissionType;
 import at.ac.tuwien.ifs.sge.game.risk.util.PriestLogic;
-import com.google.common.collect.ImmutableMultiset;
-import com.google.common.collect.Multiset;
-import com.google.common.collect.Sets;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.RandomAccess;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.SplittableRandom;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import org.jgrapht.Graph;
-import org.jgrapht.Graphs;
-import org.jgrapht.alg.connectivity.ConnectivityInspector;
-import org.jgrapht.event.GraphEdgeChangeEvent;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.graph.SimpleGraph;
 
 public class RiskBoard {
 
-  private static final Set<Set<Integer>> TRADE_IN_3_OUT_OF_5 = Set
-      .of(Set.of(0, 1, 2), Set.of(0, 1, 3), Set.of(0, 2, 3), Set.of(1, 2, 3), Set.of(0, 1, 4),
-          Set.of(0, 2, 4), Set.of(1, 2, 4), Set.of(0, 3, 4), Set.of(1, 3, 4), Set.of(2, 3, 4));
-
-  private static final Set<Set<Integer>> TRADE_IN_3_OUT_OF_4 = Set
-      .of(Set.of(0, 1, 2), Set.of(0, 1, 3), Set.of(0, 2, 3), Set.of(1, 2, 3));
-
-  private static final Set<Set<Integer>> TRADE_IN_3_OUT_OF_3 = Set.of(Set.of(0, 1, 2));
-
-  private static final Set<Multiset<Integer>> SETS_3_OUT_OF_5 = Set.of(
-      ImmutableMultiset.of(-1, -1, -1),
-      ImmutableMultiset.of(1, 1, 1), ImmutableMultiset.of(2, 2, 2), ImmutableMultiset.of(3, 3, 3),
-      ImmutableMultiset.of(0, 1, 1), ImmutableMultiset.of(0, 2, 2), ImmutableMultiset.of(0, 3, 3),
-      ImmutableMultiset.of(1, 2, 3),
-      ImmutableMultiset.of(0, 2, 3), ImmutableMultiset.of(0, 1, 3), ImmutableMultiset.of(0, 1, 2),
-      ImmutableMultiset.of(-1, 1, 1), ImmutableMultiset.of(-1, 2, 2),
-      ImmutableMultiset.of(-1, 3, 3),
-      ImmutableMultiset.of(-1, 0, 1), ImmutableMultiset.of(-1, 0, 2),
-      ImmutableMultiset.of(-1, 0, 3),
-      ImmutableMultiset.of(-1, 2, 3), ImmutableMultiset.of(-1, 1, 3),
-      ImmutableMultiset.of(-1, 1, 2),
-      ImmutableMultiset.of(-1, -1, 1), ImmutableMultiset.of(-1, -1, 2),
-      ImmutableMultiset.of(-1, -1, 3),
-      ImmutableMultiset.of(-1, -1, 0));
-
   //settings
+  /*
+   * Components of a board are shared between copies and only cloned before the first mutation
+   * (copy-on-write). A set bit in ownedComponents marks a component as exclusively owned by this
+   * board.
+   */
+  private static final int OCCUPANTS = 1;
+  private static final int TROOPS = 1 << 1;
+  private static final int DECK_OF_CARDS = 1 << 2;
+  private static final int DISCARD_PILE = 1 << 3;
+  private static final int PLAYER_CARDS = 1 << 4;
+  private static final int NON_DEPLOYED_REINFORCEMENTS = 1 << 5;
+  private static final int REINFORCED_TERRITORIES = 1 << 6;
+  private static final int INVOLVED_TROOPS_IN_ATTACKS = 1 << 7;
+  private static final int TRADE_IN_TERRITORIES = 1 << 8;
+  private static final int PLAYER_AGGREGATES = 1 << 9;
+  private static final int FRONTIER = 1 << 10;
+
+  private static final short[] NO_CARDS = new short[0];
+
   private final int numberOfPlayers;
   private final int maxAttackerDice;
   private final int maxDefenderDice;
 
   private final boolean withCards;
-  private final int[] tradeInBonus;
   private final int tradeInTerritoryBonus = 2;
-  private final int maxExtraBonus;
   private final int cardTypesWithoutJoker;
   private final int reinforcementAtLeast;
   private final int reinforcementThreshold;
@@ -79,21 +60,46 @@ public class RiskBoard {
   private final boolean fortifyOnlyWithNonFightingArmies;
   private final boolean withMissions;
   //board
-  private final Graph<Integer, DefaultEdge> gameBoard;
-  private final Map<Integer, RiskTerritory> territories;
-  private final Map<Integer, Graph<Integer, DefaultEdge>> fortifyConnectivityGraph;
-  private final Map<Integer, ConnectivityInspector<Integer, DefaultEdge>> fortifyConnectivityInspector;
-  private final Deque<RiskCard> deckOfCards;
-  private final List<RiskCard> discardPile;
+  private final RiskTopology topology;
+  private int[] territoryOccupants;
+  private int[] territoryTroops;
+  private int[] fortifyComponents;
+  private long territoryHash;
+  /*
+   * Per player aggregates of the occupants and troops, updated on every change of a territory.
+   * continentOwners holds the player occupying every territory of a continent or -1, playerMasks
+   * holds a bitset of the occupied territories of every player at player * getMaskWords().
+   */
+  private int[] playerTerritories;
+  private long[] playerMasks;
+  private int[] playerTroops;
+  private int[][] continentPlayerTerritories;
+  private int[] continentOwners;
+  /*
+   * The frontier of every player: enemyNeighbors counts the neighbors of a territory with another
+   * occupant, frontierMasks holds a bitset of the occupied territories with at least one such
+   * neighbor at player * getMaskWords().
+   */
+  private int[] enemyNeighbors;
+  private long[] frontierMasks;
+  /*
+   * Cards are packed into shorts, see RiskCard.pack(). The cards left in the deck are
+   * deckOfCards[deckTop] to the end of the array, the discard pile holds discardPileSize cards. The
+   * hands of the players are never modified in place but replaced, so owning them only clones the
+   * outer array.
+   */
+  private short[] deckOfCards;
+  private int deckTop;
+  private short[] discardPile;
+  private int discardPileSize;
   private final Set<RiskMission> allMissions;
   private final RiskMission[] playerMissions;
-  private final Map<Integer, List<RiskCard>> playerCards;
-  private final Map<Integer, RiskContinent> continents;
-  private final int[] nonDeployedReinforcements;
-  private final Set<Integer> reinforcedTerritories;
-  private final Map<Integer, Integer> involvedTroopsInAttacks;
-  private final String map;
+  private short[][] playerCards;
+  private int[] nonDeployedReinforcements;
+  private Set<Integer> reinforcedTerritories;
+  private Map<Integer, Integer> involvedTroopsInAttacks;
   private Set<Integer> tradeInTerritories;
+  private int ownedComponents;
   private int minMatchingTerritories;
   private int maxMatchingTerritories;
   private int tradeIns;
@@ -108,6 +114,14 @@ public class RiskBoard {
   private boolean initialReinforceMaybe;
 
   RiskBoard(RiskConfiguration configuration, int numberOfPlayers) {
+    this(configuration, numberOfPlayers, new SplittableRandom());
+  }
+
+  /**
+   * Creates the initial board of a game. The missions, the deck of cards and, unless they are
+   * chosen, the initial territories are dealt with the given random.
+   */
+  RiskBoard(RiskConfiguration configuration, int numberOfPlayers, SplittableRandom random) {
     this.numberOfPlayers = numberOfPlayers;
     maxAttackerDice = configuration.getMaxAttackerDice();
     maxDefenderDice = configuration.getMaxDefenderDice();
@@ -130,7 +144,7 @@ public class RiskBoard {
           .filter(m -> m.getRiskMissionType() != RiskMissionType.LIBERATE_PLAYER || m.getTargetIds()
               .stream().allMatch(i -> i < numberOfPlayers)).collect(Collectors.toUnmodifiableSet());
       playerMissions = new RiskMission[numberOfPlayers];
-      selectRandomMissions(new ArrayList<>(allMissions), playerMissions);
+      selectRandomMissions(new ArrayList<>(allMissions), playerMissions, random);
     } else {
       allMissions = null;
       playerMissions = null;
@@ -138,43 +152,29 @@ public class RiskBoard {
     Set<RiskTerritoryConfiguration> territoriesConfiguration = new HashSet<>(
         configuration.getTerritories());
 
-    Map<Integer, RiskTerritory> territoryMap = new HashMap<>();
-
-    for (RiskTerritoryConfiguration riskTerritoryConfiguration : territoriesConfiguration) {
-      territoryMap.put(riskTerritoryConfiguration.getTerritoryId(),
-          riskTerritoryConfiguration.getTerritory());
-    }
-
-    territories = Map.copyOf(territoryMap);
-
-    gameBoard = new SimpleGraph<>(DefaultEdge.class);
-    if (fortifyOnlyFromSingleTerritory) {
-      fortifyConnectivityGraph = null;
-    } else {
-      fortifyConnectivityGraph = new HashMap<>();
-      for (int p = 0; p < numberOfPlayers; p++) {
-        fortifyConnectivityGraph.put(p, new SimpleGraph<>(DefaultEdge.class));
-      }
-    }
-    for (RiskTerritoryConfiguration territoryConfiguration : territoriesConfiguration) {
-      gameBoard.addVertex(territoryConfiguration.getTerritoryId());
-      if (!fortifyOnlyFromSingleTerritory) {
-        for (int p = 0; p < numberOfPlayers; p++) {
-          fortifyConnectivityGraph.get(p).addVertex(territoryConfiguration.getTerritoryId());
-        }
-      }
-    }
-    for (RiskTerritoryConfiguration territoryConfiguration : territoriesConfiguration) {
-      for (Integer connect : territoryConfiguration.getConnects()) {
-        gameBoard.addEdge(territoryConfiguration.getTerritoryId(), connect);
-      }
+    topology = new RiskTopology(configuration);
+    ownedComponents = OCCUPANTS | TROOPS | DECK_OF_CARDS | DISCARD_PILE | PLAYER_CARDS
+        | NON_DEPLOYED_REINFORCEMENTS | PLAYER_AGGREGATES | FRONTIER;
+    territoryOccupants = new int[topology.getNumberOfTerritories()];
+    Arrays.fill(territoryOccupants, -1);
+    territoryTroops = new int[topology.getNumberOfTerritories()];
+    playerTerritories = new int[numberOfPlayers];
+    playerMasks = new long[numberOfPlayers * topology.getMaskWords()];
+    playerTroops = new int[numberOfPlayers];
+    continentPlayerTerritories = new int[topology.getNumberOfContinents()][numberOfPlayers];
+    continentOwners = new int[topology.getNumberOfContinents()];
+    Arrays.fill(continentOwners, -1);
+    enemyNeighbors = new int[topology.getNumberOfTerritories()];
+    frontierMasks = new long[numberOfPlayers * topology.getMaskWords()];
+    territoryHash = 0L;
+    for (int i = 0; i < territoryOccupants.length; i++) {
+      territoryHash ^= topology.occupantKey(i, territoryOccupants[i])
+          ^ topology.troopsKey(i, territoryTroops[i]);
     }
+    fortifyComponents = null;
 
     tradeIns = 0;
     if (withCards) {
-      tradeInBonus = configuration.getTradeInBonus();
-      maxExtraBonus = configuration.getMaxExtraBonus();
-
       List<RiskCard> cardList = territoriesConfiguration.stream().map(
           territoryConfiguration -> new RiskCard(territoryConfiguration.getCardType(),
               territoryConfiguration.getTerritoryId()))
@@ -191,29 +191,27 @@ public class RiskBoard {
       for (int i = 0; i < configuration.getNumberOfJokers(); i++) {
         cardList.add(new RiskCard(RiskCard.JOKER, -1));
       }
-      Collections.shuffle(cardList);
-      deckOfCards = new ArrayDeque<>(cardList);
-      discardPile = Collections.emptyList();
-      playerCards = IntStream.range(0, numberOfPlayers).boxed().collect(Collectors
-          .toUnmodifiableMap(p -> p, p -> new ArrayList<>(cardSlots())));
+      shuffle(cardList, random);
+      deckOfCards = new short[cardList.size()];
+      for (int i = 0; i < deckOfCards.length; i++) {
+        RiskCard card = cardList.get(i);
+        deckOfCards[i] = RiskCard.pack(card.getCardType(),
+            topology.indexOfTerritory(card.getTerritoryId()));
+      }
+      deckTop = 0;
+      discardPile = new short[deckOfCards.length];
+      discardPileSize = 0;
+      playerCards = new short[numberOfPlayers][];
+      Arrays.fill(playerCards, NO_CARDS);
 
       tradeInTerritories = Collections.emptySet();
     } else {
-      tradeInBonus = null;
-      maxExtraBonus = 0;
       deckOfCards = null;
       playerCards = null;
       discardPile = null;
-      tradeInTerritories = null;
+      tradeInTerritories = Collections.emptySet();
     }
 
-    Set<RiskContinentConfiguration> continentsConfiguration = new HashSet<>(
-        configuration.getContinents());
-
-    this.continents = continentsConfiguration.stream().collect(Collectors
-        .toUnmodifiableMap(RiskContinentConfiguration::getContinentId,
-            RiskContinentConfiguration::getContinent, (a, b) -> b));
-
     nonDeployedReinforcements = new int[numberOfPlayers];
     int[] initialTroops = configuration.getInitialTroops();
     Arrays.fill(nonDeployedReinforcements,
@@ -222,45 +220,24 @@ public class RiskBoard {
     reinforcedTerritories = Collections.emptySet();
 
     if (!configuration.isChooseInitialTerritories()) {
-      List<Integer> ids = new ArrayList<>(territories.keySet());
-      Collections.shuffle(ids);
+      List<Integer> indices = IntStream.range(0, topology.getNumberOfTerritories()).boxed()
+          .collect(Collectors.toCollection(ArrayList::new));
+      shuffle(indices, random);
       int p;
       {
         int i;
         for (p = numberOfPlayers - 1, i = 0;
-            i < ids.size();
+            i < indices.size();
             i++, p = (p + (numberOfPlayers - 1)) % numberOfPlayers) {
-          RiskTerritory territory = territories.get(ids.get(i));
-          territory.setOccupantPlayerId(p);
-          territory.setTroops(1);
+          int index = indices.get(i);
+          setOccupantAt(index, p);
+          setTroopsAt(index, 1);
           nonDeployedReinforcements[p]--;
         }
       }
-
-      if (!fortifyOnlyFromSingleTerritory) {
-        for (DefaultEdge edge : gameBoard.edgeSet()) {
-          int src = gameBoard.getEdgeSource(edge);
-          int dst = gameBoard.getEdgeTarget(edge);
-          int occupant;
-          if ((occupant = getTerritoryOccupantId(src)) == getTerritoryOccupantId(dst)) {
-            fortifyConnectivityGraph.get(occupant).addEdge(src, dst);
-          }
-        }
-      }
-    }
-
-    if (fortifyOnlyFromSingleTerritory) {
-      fortifyConnectivityInspector = null;
-    } else {
-      fortifyConnectivityInspector = new HashMap<>();
-
-      for (int p = 0; p < numberOfPlayers; p++) {
-        fortifyConnectivityInspector
-            .put(p, new ConnectivityInspector<>(fortifyConnectivityGraph.get(p)));
-      }
     }
 
-    involvedTroopsInAttacks = new HashMap<>();
+    involvedTroopsInAttacks = Collections.emptyMap();
 
     attackingId = -1;
     defendingId = -1;
@@ -275,54 +252,63 @@ public class RiskBoard {
     tradedInId = -5;
     minMatchingTerritories = 0;
     maxMatchingTerritories = 0;
-
-    map = configuration.getMap();
   }
 
+  /**
+   * Creates a copy sharing all components with the given board. The given board gives up exclusive
+   * ownership of them, this write is skipped if it owns nothing so that copying an already shared
+   * board is read-only.
+   */
   RiskBoard(RiskBoard riskBoard) {
     this(riskBoard.numberOfPlayers, riskBoard.maxAttackerDice, riskBoard.maxDefenderDice,
-        riskBoard.withCards, riskBoard.tradeInBonus, riskBoard.maxExtraBonus, riskBoard.tradeIns,
+        riskBoard.withCards, riskBoard.tradeIns,
         riskBoard.cardTypesWithoutJoker, riskBoard.reinforcementAtLeast,
         riskBoard.reinforcementThreshold, riskBoard.occupyOnlyWithAttackingArmies,
         riskBoard.fortifyOnlyFromSingleTerritory, riskBoard.fortifyOnlyWithNonFightingArmies,
-        riskBoard.withMissions, riskBoard.gameBoard, riskBoard.territories,
-        riskBoard.fortifyConnectivityGraph, riskBoard.fortifyConnectivityInspector,
-        riskBoard.deckOfCards, riskBoard.discardPile, riskBoard.allMissions,
-        riskBoard.playerMissions, riskBoard.playerCards, riskBoard.continents,
+        riskBoard.withMissions, riskBoard.topology, riskBoard.territoryOccupants,
+        riskBoard.territoryTroops, riskBoard.fortifyComponents, riskBoard.territoryHash,
+        riskBoard.playerTerritories, riskBoard.playerMasks, riskBoard.playerTroops,
+        riskBoard.continentPlayerTerritories,
+        riskBoard.continentOwners, riskBoard.enemyNeighbors, riskBoard.frontierMasks,
+        riskBoard.deckOfCards, riskBoard.deckTop,
+        riskBoard.discardPile, riskBoard.discardPileSize,
+        riskBoard.allMissions, riskBoard.playerMissions, riskBoard.playerCards,
         riskBoard.nonDeployedReinforcements, riskBoard.reinforcedTerritories,
         riskBoard.involvedTroopsInAttacks, riskBoard.attackingId, riskBoard.defendingId,
         riskBoard.troops, riskBoard.hasOccupiedCountry, riskBoard.phase,
         riskBoard.initialSelectMaybe, riskBoard.initialReinforceMaybe, riskBoard.tradedInId,
         riskBoard.tradeInTerritories, riskBoard.minMatchingTerritories,
-        riskBoard.maxMatchingTerritories, riskBoard.map);
+        riskBoard.maxMatchingTerritories);
+    if (riskBoard.ownedComponents != 0) {
+      riskBoard.ownedComponents = 0;
+    }
   }
 
   private RiskBoard(int numberOfPlayers, int maxAttackerDice, int maxDefenderDice,
-      boolean withCards, int[] tradeInBonus, int maxExtraBonus, int tradeIns,
+      boolean withCards, int tradeIns,
       int cardTypesWithoutJoker, int reinforcementAtLeast,
       int reinforcementThreshold, boolean occupyOnlyWithAttackingArmies,
       boolean fortifyOnlyFromSingleTerritory, boolean fortifyOnlyWithNonFightingArmies,
       boolean withMissions,
-      Graph<Integer, DefaultEdge> gameBoard, Map<Integer, RiskTerritory> territories,
-      Map<Integer, Graph<Integer, DefaultEdge>> fortifyConnectivityGraph,
-      Map<Integer, ConnectivityInspector<Integer, DefaultEdge>> fortifyConnectivityInspector,
-      Collection<RiskCard> deckOfCards, Collection<RiskCard> discardPile,
+      RiskTopology topology, int[] territoryOccupants, int[] territoryTroops,
+      int[] fortifyComponents, long territoryHash, int[] playerTerritories, long[] playerMasks,
+      int[] playerTroops,
+      int[][] continentPlayerTerritories, int[] continentOwners, int[] enemyNeighbors,
+      long[] frontierMasks, short[] deckOfCards, int deckTop,
+      short[] discardPile, int discardPileSize,
       Set<RiskMission> allMissions,
       RiskMission[] playerMissions,
-      Map<Integer, List<RiskCard>> playerCards,
-      Map<Integer, RiskContinent> continents, int[] nonDeployedReinforcements,
-      Collection<Integer> reinforcedTerritories,
+      short[][] playerCards,
+      int[] nonDeployedReinforcements,
+      Set<Integer> reinforcedTerritories,
       Map<Integer, Integer> involvedTroopsInAttacks, int attackingId,
       int defendingId, int troops, boolean hasOccupiedCountry, RiskPhase phase,
       boolean initialSelectMaybe, boolean initialReinforceMaybe, int tradedInId,
-      Set<Integer> tradeInTerritories, int minMatchingTerritories, int maxMatchingTerritories,
-      String map) {
+      Set<Integer> tradeInTerritories, int minMatchingTerritories, int maxMatchingTerritories) {
     this.numberOfPlayers = numberOfPlayers;
     this.maxAttackerDice = maxAttackerDice;
     this.maxDefenderDice = maxDefenderDice;
     this.withCards = withCards;
-    this.tradeInBonus = tradeInBonus;
-    this.maxExtraBonus = maxExtraBonus;
     this.tradeIns = tradeIns;
     this.cardTypesWithoutJoker = cardTypesWithoutJoker;
     this.reinforcementAtLeast = reinforcementAtLeast;
@@ -331,59 +317,29 @@ public class RiskBoard {
     this.fortifyOnlyFromSingleTerritory = fortifyOnlyFromSingleTerritory;
     this.fortifyOnlyWithNonFightingArmies = fortifyOnlyWithNonFightingArmies;
     this.withMissions = withMissions;
-    this.gameBoard = gameBoard;
-    this.territories = Collections.unmodifiableMap(copyTerritories(territories));
-    if (fortifyOnlyFromSingleTerritory) {
-      this.fortifyConnectivityGraph = fortifyConnectivityGraph;
-      this.fortifyConnectivityInspector = fortifyConnectivityInspector;
-    } else {
-      this.fortifyConnectivityGraph = new HashMap<>(fortifyConnectivityGraph.size() + 1, 1.00f);
-      for (int p = 0; p < numberOfPlayers; p++) {
-        this.fortifyConnectivityGraph.put(p, new SimpleGraph<>(DefaultEdge.class));
-      }
-      for (Integer vertex : gameBoard.vertexSet()) {
-        for (int p = 0; p < numberOfPlayers; p++) {
-          this.fortifyConnectivityGraph.get(p).addVertex(vertex);
-        }
-      }
-      for (DefaultEdge edge : this.gameBoard.edgeSet()) {
-        int src = this.gameBoard.getEdgeSource(edge);
-        int dst = this.gameBoard.getEdgeTarget(edge);
-        int occupant;
-        if ((occupant = getTerritoryOccupantId(src)) == getTerritoryOccupantId(dst)) {
-          if (occupant < 0) {
-            break;
-          }
-          this.fortifyConnectivityGraph.get(occupant).addEdge(src, dst);
-        }
-      }
-
-      this.fortifyConnectivityInspector = new HashMap<>(this.fortifyConnectivityGraph.size() + 1,
-          1.00f);
-      for (Entry<Integer, Graph<Integer, DefaultEdge>> entry : fortifyConnectivityGraph
-          .entrySet()) {
-        this.fortifyConnectivityInspector
-            .put(entry.getKey(), new ConnectivityInspector<>(entry.getValue()));
-      }
-
-    }
-
-    this.deckOfCards = deckOfCards != null ? new ArrayDeque<>(deckOfCards) : null;
-    this.discardPile = discardPile != null ? new ArrayList<>(discardPile) : null;
+    this.topology = topology;
+    this.territoryOccupants = territoryOccupants;
+    this.territoryTroops = territoryTroops;
+    this.fortifyComponents = fortifyComponents;
+    this.territoryHash = territoryHash;
+    this.playerTerritories = playerTerritories;
+    this.playerMasks = playerMasks;
+    this.playerTroops = playerTroops;
+    this.continentPlayerTerritories = continentPlayerTerritories;
+    this.continentOwners = continentOwners;
+    this.enemyNeighbors = enemyNeighbors;
+    this.frontierMasks = frontierMasks;
+
+    this.deckOfCards = deckOfCards;
+    this.deckTop = deckTop;
+    this.discardPile = discardPile;
+    this.discardPileSize = discardPileSize;
     this.allMissions = allMissions;
-    this.playerMissions = playerMissions != null ? playerMissions.clone() : null;
-    if (playerCards == null) {
-      this.playerCards = null;
-    } else {
-      this.playerCards = new HashMap<>(1 + (int) (0.75f * playerCards.size()), 0.75f);
-      for (Entry<Integer, List<RiskCard>> entry : playerCards.entrySet()) {
-        this.playerCards.put(entry.getKey(), new ArrayList<>(entry.getValue()));
-      }
-    }
-    this.continents = continents;
-    this.nonDeployedReinforcements = nonDeployedReinforcements.clone();
-    this.reinforcedTerritories = new HashSet<>(reinforcedTerritories);
-    this.involvedTroopsInAttacks = new HashMap<>(involvedTroopsInAttacks);
+    this.playerMissions = playerMissions;
+    this.playerCards = playerCards;
+    this.nonDeployedReinforcements = nonDeployedReinforcements;
+    this.reinforcedTerritories = reinforcedTerritories;
+    this.involvedTroopsInAttacks = involvedTroopsInAttacks;
     this.attackingId = attackingId;
     this.defendingId = defendingId;
     this.troops = troops;
@@ -392,22 +348,16 @@ public class RiskBoard {
     this.initialSelectMaybe = initialSelectMaybe;
     this.initialReinforceMaybe = initialReinforceMaybe;
     this.tradedInId = tradedInId;
-    this.tradeInTerritories = tradeInTerritories != null ? new HashSet<>(tradeInTerritories) : null;
+    this.tradeInTerritories = tradeInTerritories;
+    this.ownedComponents = 0;
     this.minMatchingTerritories = Math
         .max(0, Math.min(minMatchingTerritories, cardTypesWithoutJoker));
     this.maxMatchingTerritories = Math
         .max(this.minMatchingTerritories, Math.min(maxMatchingTerritories, cardTypesWithoutJoker));
-    this.map = map;
-  }
-
-  private static Map<Integer, RiskTerritory> copyTerritories(
-      Map<Integer, RiskTerritory> territories) {
-    return territories.keySet().stream().collect(Collectors
-        .toMap(i -> i, i -> new RiskTerritory(territories.get(i)), (a, b) -> b));
   }
 
   private static void selectRandomMissions(List<RiskMission> missionList,
-      RiskMission[] playerMissions) {
+      RiskMission[] playerMissions, SplittableRandom random) {
     Optional<RiskMission> fallbackOptional = missionList.stream()
         .filter(m -> m.getRiskMissionType() == RiskMissionType.OCCUPY_TERRITORY).findFirst();
 
@@ -428,7 +378,7 @@ public class RiskBoard {
     boolean playerLiberateThemselves;
     do {
       playerLiberateThemselves = false;
-      Collections.shuffle(missionList);
+      shuffle(missionList, random);
       for (int i = 0; i < playerMissions.length; i++) {
         RiskMission riskMission = missionList.get(i);
         playerMissions[i] = riskMission;
@@ -459,12 +409,19 @@ public class RiskBoard {
   }
 
   /**
-   * Returns all territories mapped from their territoryId.
+   * Returns all territories mapped from their territoryId. The territories are a snapshot of the
+   * board, changing them does not change the board.
    *
    * @return a map of territories mapped by their territoryId.
    */
   public Map<Integer, RiskTerritory> getTerritories() {
-    return territories;
+    Map<Integer, RiskTerritory> territories = new HashMap<>(
+        1 + (int) (territoryOccupants.length / 0.75f), 0.75f);
+    for (int i = 0; i < territoryOccupants.length; i++) {
+      territories.put(topology.getTerritoryId(i), new RiskTerritory(topology.getContinentId(i),
+          territoryOccupants[i], territoryTroops[i]));
+    }
+    return Collections.unmodifiableMap(territories);
   }
 
   /**
@@ -474,7 +431,7 @@ public class RiskBoard {
    * @return a set of all territoryIds.
    */
   public Set<Integer> getTerritoryIds() {
-    return territories.keySet();
+    return topology.getTerritoryIds();
   }
 
   /**
@@ -485,7 +442,196 @@ public class RiskBoard {
    * @return true iff present on the board, otherwise false.
    */
   public boolean isTerritory(int territoryId) {
-    return territories.containsKey(territoryId);
+    return indexOfTerritory(territoryId) >= 0;
+  }
+
+  int getNumberOfTerritories() {
+    return topology.getNumberOfTerritories();
+  }
+
+  /**
+   * Returns the index of the territory in the arrays backing this board. A negative number
+   * indicates that the territoryId does not exist on the board.
+   */
+  int indexOfTerritory(int territoryId) {
+    return topology.indexOfTerritory(territoryId);
+  }
+
+  RiskTopology getTopology() {
+    return topology;
+  }
+
+  int getTerritoryIdAt(int index) {
+    return topology.getTerritoryId(index);
+  }
+
+  int getTerritoryOccupantIdAt(int index) {
+    return territoryOccupants[index];
+  }
+
+  int getTerritoryTroopsAt(int index) {
+    return territoryTroops[index];
+  }
+
+  private void setOccupantAt(int index, int playerId) {
+    own(OCCUPANTS);
+    final int occupant = territoryOccupants[index];
+    territoryHash ^= topology.occupantKey(index, occupant)
+        ^ topology.occupantKey(index, playerId);
+    territoryOccupants[index] = playerId;
+    fortifyComponents = null;
+    if (occupant != playerId) {
+      aggregateTerritory(index, occupant, -1);
+      aggregateTerritory(index, playerId, 1);
+      updateFrontier(index, occupant, playerId);
+    }
+  }
+
+  /**
+   * Updates the enemy neighbor counts and frontiers of the territory at the given index and its
+   * neighbors after its occupant changed.
+   */
+  private void updateFrontier(int index, int previousOccupant, int occupant) {
+    own(FRONTIER);
+    int enemies = enemyNeighbors[index];
+    for (int n = topology.neighborsStart(index); n < topology.neighborsEnd(index); n++) {
+      final int neighbor = topology.getNeighbor(n);
+      final int neighborOccupant = territoryOccupants[neighbor];
+      final int delta = (neighborOccupant != occupant ? 1 : 0)
+          - (neighborOccupant != previousOccupant ? 1 : 0);
+      if (delta != 0) {
+        enemyNeighbors[neighbor] += delta;
+        enemies += delta;
+        setFrontierBit(neighbor, neighborOccupant, enemyNeighbors[neighbor] > 0);
+      }
+    }
+    enemyNeighbors[index] = enemies;
+    setFrontierBit(index, previousOccupant, false);
+    setFrontierBit(index, occupant, enemies > 0);
+  }
+
+  private void setFrontierBit(int index, int player, boolean frontier) {
+    if (player < 0 || player >= numberOfPlayers) {
+      return;
+    }
+    final int word = player * topology.getMaskWords() + (index >>> 6);
+    if (frontier) {
+      frontierMasks[word] |= 1L << index;
+    } else {
+      frontierMasks[word] &= ~(1L << index);
+    }
+  }
+
+  private void setTroopsAt(int index, int troops) {
+    own(TROOPS);
+    final int previous = territoryTroops[index];
+    territoryHash ^= topology.troopsKey(index, previous)
+        ^ topology.troopsKey(index, troops);
+    territoryTroops[index] = troops;
+    final int occupant = territoryOccupants[index];
+    if (0 <= occupant && occupant < numberOfPlayers) {
+      own(PLAYER_AGGREGATES);
+      playerTroops[occupant] += troops - previous;
+    }
+  }
+
+  /**
+   * Adds (sign 1) or removes (sign -1) the territory at the given index and its troops to the
+   * aggregates of the given player.
+   */
+  private void aggregateTerritory(int index, int player, int sign) {
+    if (player < 0 || player >= numberOfPlayers) {
+      return;
+    }
+    own(PLAYER_AGGREGATES);
+    playerTerritories[player] += sign;
+    playerTroops[player] += sign * territoryTroops[index];
+    final int word = player * topology.getMaskWords() + (index >>> 6);
+    if (sign > 0) {
+      playerMasks[word] |= 1L << index;
+    } else {
+      playerMasks[word] &= ~(1L << index);
+    }
+    final int continent = topology.getContinentIndex(index);
+    if (continent >= 0) {
+      final int occupied = continentPlayerTerritories[continent][player] += sign;
+      if (occupied == topology.continentTerritoriesEnd(continent)
+          - topology.continentTerritoriesStart(continent)) {
+        continentOwners[continent] = player;
+      } else if (continentOwners[continent] == player) {
+        continentOwners[continent] = -1;
+      }
+    }
+  }
+
+  private void addTroopsAt(int index, int troops) {
+    setTroopsAt(index, territoryTroops[index] + troops);
+  }
+
+  /**
+   * Clones the given component unless this board already owns it exclusively.
+   */
+  private void own(int component) {
+    if ((ownedComponents & component) != 0) {
+      return;
+    }
+    switch (component) {
+      case OCCUPANTS:
+        territoryOccupants = territoryOccupants.clone();
+        break;
+      case TROOPS:
+        territoryTroops = territoryTroops.clone();
+        break;
+      case DECK_OF_CARDS:
+        deckOfCards = deckOfCards != null ? deckOfCards.clone() : null;
+        break;
+      case DISCARD_PILE:
+        discardPile = discardPile != null ? discardPile.clone() : null;
+        break;
+      case PLAYER_CARDS:
+        playerCards = playerCards != null ? playerCards.clone() : null;
+        break;
+      case NON_DEPLOYED_REINFORCEMENTS:
+        nonDeployedReinforcements = nonDeployedReinforcements.clone();
+        break;
+      case REINFORCED_TERRITORIES:
+        reinforcedTerritories = new HashSet<>(reinforcedTerritories);
+        break;
+      case INVOLVED_TROOPS_IN_ATTACKS:
+        involvedTroopsInAttacks = new HashMap<>(involvedTroopsInAttacks);
+        break;
+      case TRADE_IN_TERRITORIES:
+        tradeInTerritories = tradeInTerritories != null ? new HashSet<>(tradeInTerritories) : null;
+        break;
+      case PLAYER_AGGREGATES:
+        playerTerritories = playerTerritories.clone();
+        playerMasks = playerMasks.clone();
+        playerTroops = playerTroops.clone();
+        int[][] continentTerritories = new int[continentPlayerTerritories.length][];
+        for (int c = 0; c < continentTerritories.length; c++) {
+          continentTerritories[c] = continentPlayerTerritories[c].clone();
+        }
+        continentPlayerTerritories = continentTerritories;
+        continentOwners = continentOwners.clone();
+        break;
+      case FRONTIER:
+        enemyNeighbors = enemyNeighbors.clone();
+        frontierMasks = frontierMasks.clone();
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown component " + component);
+    }
+    ownedComponents |= component;
+  }
+
+  private void clearReinforcedTerritories() {
+    reinforcedTerritories = Collections.emptySet();
+    ownedComponents &= ~REINFORCED_TERRITORIES;
+  }
+
+  private void clearInvolvedTroopsInAttacks() {
+    involvedTroopsInAttacks = Collections.emptyMap();
+    ownedComponents &= ~INVOLVED_TROOPS_IN_ATTACKS;
   }
 
   /**
@@ -494,7 +640,7 @@ public class RiskBoard {
    * @return a map of territories mapped by their territoryId.
    */
   public Map<Integer, RiskContinent> getContinents() {
-    return continents;
+    return topology.getContinents();
   }
 
   /**
@@ -504,7 +650,7 @@ public class RiskBoard {
    * @return a set of all territoryIds.
    */
   public Set<Integer> getContinentIds() {
-    return continents.keySet();
+    return topology.getContinents().keySet();
   }
 
   /**
@@ -515,7 +661,7 @@ public class RiskBoard {
    * @return true iff present on the board, otherwise false.
    */
   public boolean isContinent(int continentId) {
-    return continents.containsKey(continentId);
+    return topology.indexOfContinent(continentId) >= 0;
   }
 
 
@@ -527,12 +673,39 @@ public class RiskBoard {
    * @return the number of bonus troops if the continent is taken
    */
   public int getContinentBonus(int continentId) {
-    if (isContinent(continentId)) {
-      return continents.get(continentId).getTroopBonus();
+    int continent = topology.indexOfContinent(continentId);
+    if (continent >= 0) {
+      return topology.getContinentBonusAt(continent);
     }
     return 0;
   }
 
+  /**
+   * Returns the id of the player occupying every territory of the given continent. If no player
+   * holds the whole continent or continentId is not present on the board -1 is returned instead.
+   *
+   * @param continentId the id of the continent
+   * @return the id of the player holding the continent or -1
+   */
+  public int getContinentOwner(int continentId) {
+    int continent = topology.indexOfContinent(continentId);
+    return continent >= 0 ? continentOwners[continent] : -1;
+  }
+
+  /**
+   * Returns the number of territories of the given continent occupied by the given player. If
+   * continentId is not present on the board or the player does not exist 0 is returned instead.
+   *
+   * @param playerId    the id of the player
+   * @param continentId the id of the continent
+   * @return the number of territories of the continent occupied by the player
+   */
+  public int getNrOfTerritoriesOccupiedByPlayerInContinent(int playerId, int continentId) {
+    int continent = topology.indexOfContinent(continentId);
+    return continent >= 0 && 0 <= playerId && playerId < numberOfPlayers
+        ? continentPlayerTerritories[continent][playerId] : 0;
+  }
+
   /**
    * Returns which player currently occupies the given territory. A negative number indicates either
    * that noone has yet occupied this territory or that the territoryId does not exist on the board.
@@ -542,14 +715,14 @@ public class RiskBoard {
    * @return the id of the occupying player.
    */
   public int getTerritoryOccupantId(int territoryId) {
-    return territories.containsKey(territoryId) ? territories.get(territoryId)
-        .getOccupantPlayerId()
-        : -1;
+    int index = indexOfTerritory(territoryId);
+    return index >= 0 ? territoryOccupants[index] : -1;
   }
 
   private void setTerritoryOccupantId(int territoryOccupantId, int playerId) {
-    if (isTerritory(territoryOccupantId)) {
-      territories.get(territoryOccupantId).setOccupantPlayerId(playerId);
+    int index = indexOfTerritory(territoryOccupantId);
+    if (index >= 0) {
+      setOccupantAt(index, playerId);
     }
   }
 
@@ -562,11 +735,12 @@ public class RiskBoard {
    * @return the id of the occupying player.
    */
   public int getTerritoryTroops(int territoryId) {
-    return territories.containsKey(territoryId) ? territories.get(territoryId).getTroops() : 0;
+    int index = indexOfTerritory(territoryId);
+    return index >= 0 ? territoryTroops[index] : 0;
   }
 
   String getMap() {
-    return map;
+    return topology.getMap();
   }
 
   boolean isInitialSelectMaybe() {
@@ -586,32 +760,33 @@ public class RiskBoard {
   }
 
   void initialSelect(int selected, int playerId) {
-    RiskTerritory territory = territories.get(selected);
-    territory.setOccupantPlayerId(playerId);
-    territory.setTroops(1);
+    int index = indexOfTerritory(selected);
+    setOccupantAt(index, playerId);
+    setTroopsAt(index, 1);
+    own(NON_DEPLOYED_REINFORCEMENTS);
     nonDeployedReinforcements[playerId]--;
   }
 
   void endMove(int nextPlayer) {
     phase = RiskPhase.REINFORCEMENT;
-    involvedTroopsInAttacks.clear();
+    clearInvolvedTroopsInAttacks();
     hasOccupiedCountry = false;
     awardReinforcements(nextPlayer);
-    reinforcedTerritories.clear();
+    clearReinforcedTerritories();
   }
 
   private void awardReinforcements(int player) {
-    int occupiedTerritories = Math.toIntExact(territories.values().stream()
-        .filter(t -> t.getOccupantPlayerId() == player).count());
+    int occupiedTerritories = getNrOfTerritoriesOccupiedByPlayer(player);
     int reinforcements = Math
         .max(reinforcementAtLeast, occupiedTerritories / reinforcementThreshold);
 
-    for (Entry<Integer, RiskContinent> continent : continents.entrySet()) {
-      if (continentConquered(player, continent.getKey())) {
-        reinforcements += continent.getValue().getTroopBonus();
+    for (int c = 0; c < topology.getNumberOfContinents(); c++) {
+      if (continentConqueredAt(player, c)) {
+        reinforcements += topology.getContinentBonusAt(c);
       }
     }
 
+    own(NON_DEPLOYED_REINFORCEMENTS);
     nonDeployedReinforcements[player] += reinforcements;
   }
 
@@ -672,18 +847,49 @@ public class RiskBoard {
     return maxDefenderDice;
   }
 
+  /**
+   * Return the outcome distributions of a dice round under the dice limits of this board.
+   *
+   * @return the battle odds of this board
+   */
+  public BattleOdds getBattleOdds() {
+    return topology.getBattleOdds();
+  }
+
+  /**
+   * Return the oracle for the outcomes of whole battles under the dice limits of this board.
+   *
+   * @return the battle oracle of this board
+   */
+  public BattleOracle getBattleOracle() {
+    return topology.getBattleOracle();
+  }
+
+  /**
+   * Return the probability that attacking the defending territory with all mobile troops of the
+   * attacking territory until the battle is decided conquers it.
+   *
+   * @param attackingId the id of the attacking territory
+   * @param defendingId the id of the defending territory
+   * @return the probability to conquer the defending territory
+   */
+  public double getConquerProbability(int attackingId, int defendingId) {
+    return getBattleOracle().getWinProbability(Math.max(0, getMobileTroops(attackingId)),
+        getTerritoryTroops(defendingId));
+  }
+
   int getNrOfDefenderDice() {
 
-    if (!territories.containsKey(defendingId)) {
+    if (!isTerritory(defendingId)) {
       return 0;
     }
 
-    return Math.min(maxDefenderDice, territories.get(defendingId).getTroops());
+    return Math.min(maxDefenderDice, getTerritoryTroops(defendingId));
   }
 
   int getNrOfAttackerDice() {
 
-    if (!territories.containsKey(attackingId)) {
+    if (!isTerritory(attackingId)) {
       return 0;
     }
 
@@ -691,10 +897,12 @@ public class RiskBoard {
   }
 
   void reinforce(int player, int reinforcedId, int troops) {
-    if (territories.containsKey(reinforcedId)) {
-      RiskTerritory territory = territories.get(reinforcedId);
-      territory.setTroops(territory.getTroops() + troops);
+    int index = indexOfTerritory(reinforcedId);
+    if (index >= 0) {
+      addTroopsAt(index, troops);
+      own(NON_DEPLOYED_REINFORCEMENTS);
       nonDeployedReinforcements[player] -= troops;
+      own(REINFORCED_TERRITORIES);
       reinforcedTerritories.add(reinforcedId);
     }
   }
@@ -705,8 +913,11 @@ public class RiskBoard {
 
   void endReinforcementPhase() {
     phase = RiskPhase.ATTACK;
-    reinforcedTerritories.clear();
-    tradeInTerritories.clear();
+    clearReinforcedTerritories();
+    if (tradeInTerritories != null) {
+      tradeInTerritories = Collections.emptySet();
+      ownedComponents &= ~TRADE_IN_TERRITORIES;
+    }
     tradedInId = -5;
   }
 
@@ -718,7 +929,14 @@ public class RiskBoard {
    * @return a set of ids of the neighboring territories.
    */
   public Set<Integer> neighboringTerritories(int territoryId) {
-    return Graphs.neighborSetOf(gameBoard, territoryId);
+    Set<Integer> neighbors = new HashSet<>();
+    int index = indexOfTerritory(territoryId);
+    if (index >= 0) {
+      for (int n = topology.neighborsStart(index); n < topology.neighborsEnd(index); n++) {
+        neighbors.add(topology.getTerritoryId(topology.getNeighbor(n)));
+      }
+    }
+    return neighbors;
   }
 
   /**
@@ -731,9 +949,7 @@ public class RiskBoard {
    * @return a set of ids of the neighboring enemy territories.
    */
   public Set<Integer> neighboringEnemyTerritories(int territoryId) {
-    final int self = getTerritoryOccupantId(territoryId);
-    return Graphs.neighborSetOf(gameBoard, territoryId).stream()
-        .filter(id -> getTerritoryOccupantId(id) != self).collect(Collectors.toSet());
+    return neighboringTerritories(territoryId, false);
   }
 
   /**
@@ -746,9 +962,31 @@ public class RiskBoard {
    * @return a set of ids of the neighboring friendly territories.
    */
   public Set<Integer> neighboringFriendlyTerritories(int territoryId) {
-    final int self = getTerritoryOccupantId(territoryId);
-    return Graphs.neighborSetOf(gameBoard, territoryId).stream()
-        .filter(id -> getTerritoryOccupantId(id) == self).collect(Collectors.toSet());
+    return neighboringTerritories(territoryId, true);
+  }
+
+  private Set<Integer> neighboringTerritories(int territoryId, boolean friendly) {
+    Set<Integer> neighbors = new HashSet<>();
+    int index = indexOfTerritory(territoryId);
+    if (index >= 0) {
+      final int self = territoryOccupants[index];
+      if (0 <= self && self < numberOfPlayers) {
+        final int offset = self * topology.getMaskWords();
+        for (int w = 0; w < topology.getMaskWords(); w++) {
+          final long occupied = playerMasks[offset + w];
+          addTerritoriesOfWord(neighbors, w,
+              topology.getNeighborMaskWord(index, w) & (friendly ? occupied : ~occupied));
+        }
+        return neighbors;
+      }
+      for (int n = topology.neighborsStart(index); n < topology.neighborsEnd(index); n++) {
+        int neighbor = topology.getNeighbor(n);
+        if ((territoryOccupants[neighbor] == self) == friendly) {
+          neighbors.add(topology.getTerritoryId(neighbor));
+        }
+      }
+    }
+    return neighbors;
   }
 
   /**
@@ -780,6 +1018,27 @@ public class RiskBoard {
     return Math.min(troops, getMaxAttackerDice());
   }
 
+  int getMaxAttackingTroopsAt(int index) {
+    int troops = territoryTroops[index] - 1;
+    if (occupyOnlyWithAttackingArmies) {
+      return troops;
+    }
+
+    return Math.min(troops, getMaxAttackerDice());
+  }
+
+  int neighborsStartAt(int index) {
+    return topology.neighborsStart(index);
+  }
+
+  int neighborsEndAt(int index) {
+    return topology.neighborsEnd(index);
+  }
+
+  int getNeighborAt(int n) {
+    return topology.getNeighbor(n);
+  }
+
   /**
    * Check if two territories are neighbors. Also returns false if either id does not exist. This
    * method is symmetrical however not reflexive or transitive.
@@ -789,7 +1048,9 @@ public class RiskBoard {
    * @return true iff the two territories differ and are neighbors.
    */
   public boolean areNeighbors(int territoryId1, int territoryId2) {
-    return gameBoard.containsEdge(territoryId1, territoryId2);
+    int index1 = indexOfTerritory(territoryId1);
+    int index2 = indexOfTerritory(territoryId2);
+    return index1 >= 0 && index2 >= 0 && topology.areNeighbors(index1, index2);
   }
 
   /**
@@ -801,9 +1062,153 @@ public class RiskBoard {
    * @return a set of territories occupied by a given player.
    */
   public Set<Integer> getTerritoriesOccupiedByPlayer(final int playerId) {
-    return territories.entrySet().stream()
-        .filter(entry -> entry.getValue().getOccupantPlayerId() == playerId).map(Entry::getKey)
-        .collect(Collectors.toSet());
+    Set<Integer> occupiedTerritories = new HashSet<>();
+    if (0 <= playerId && playerId < numberOfPlayers) {
+      final int offset = playerId * topology.getMaskWords();
+      for (int w = 0; w < topology.getMaskWords(); w++) {
+        addTerritoriesOfWord(occupiedTerritories, w, playerMasks[offset + w]);
+      }
+    }
+    return occupiedTerritories;
+  }
+
+  private void addTerritoriesOfWord(Set<Integer> territories, int word, long bits) {
+    while (bits != 0) {
+      territories.add(topology.getTerritoryId(word * Long.SIZE + Long.numberOfTrailingZeros(bits)));
+      bits &= bits - 1;
+    }
+  }
+
+  /**
+   * Return the bit standing for the given territory in the bitsets of this board. Bit i of a bitset
+   * is bit i % 64 of the long at index i / 64, territories are numbered in ascending order of their
+   * ids. A negative number indicates that the territoryId is not present on the board.
+   *
+   * @param territoryId the id of the territory
+   * @return the bit of the territory or -1
+   */
+  public int getTerritoryBit(int territoryId) {
+    return indexOfTerritory(territoryId);
+  }
+
+  /**
+   * Return the id of the territory the given bit stands for. The inverse of
+   * getTerritoryBit(territoryId).
+   *
+   * @param bit the bit of the territory
+   * @return the id of the territory
+   * @throws IllegalArgumentException if the bit does not stand for a territory
+   */
+  public int getTerritoryIdOfBit(int bit) {
+    if (bit < 0 || bit >= topology.getNumberOfTerritories()) {
+      throw new IllegalArgumentException(bit + " does not stand for a territory");
+    }
+    return topology.getTerritoryId(bit);
+  }
+
+  /**
+   * Return a bitset of the territories occupied by the given player, see getTerritoryBit(int). An
+   * empty bitset indicates that the player has no longer occupied any territories or that the
+   * player does not exist. The returned array is a copy.
+   *
+   * @param playerId the id of the player
+   * @return a bitset of the territories occupied by the player
+   */
+  public long[] getTerritoryMaskOfPlayer(final int playerId) {
+    long[] mask = new long[topology.getMaskWords()];
+    if (0 <= playerId && playerId < numberOfPlayers) {
+      System.arraycopy(playerMasks, playerId * mask.length, mask, 0, mask.length);
+    }
+    return mask;
+  }
+
+  /**
+   * Return a bitset of the frontier of the given player, see getTerritoryBit(int). The frontier
+   * consists of the territories occupied by the player with at least one neighbor occupied by
+   * someone else. An empty bitset indicates that the player has no frontier or does not exist. The
+   * returned array is a copy.
+   *
+   * @param playerId the id of the player
+   * @return a bitset of the frontier territories of the player
+   */
+  public long[] getFrontierMaskOfPlayer(final int playerId) {
+    long[] mask = new long[topology.getMaskWords()];
+    if (0 <= playerId && playerId < numberOfPlayers) {
+      System.arraycopy(frontierMasks, playerId * mask.length, mask, 0, mask.length);
+    }
+    return mask;
+  }
+
+  /**
+   * Return a set of ids of the territories occupied by the given player with at least one neighbor
+   * occupied by someone else. An empty set indicates that the player has no frontier or that the
+   * player does not exist.
+   *
+   * @param playerId the id of the player
+   * @return a set of ids of the frontier territories of the player
+   */
+  public Set<Integer> getFrontierTerritoriesOfPlayer(final int playerId) {
+    return getTerritoriesOfMask(getFrontierMaskOfPlayer(playerId));
+  }
+
+  /**
+   * Return the number of neighbors of the given territory which are not occupied with the same
+   * occupantId. This is equal to neighboringEnemyTerritories(territoryId).size() without building
+   * the set. Returns 0 if the territoryId is not present on the board.
+   *
+   * @param territoryId the id of the territory
+   * @return the number of neighboring enemy territories
+   */
+  public int getNrOfEnemyNeighbors(int territoryId) {
+    int index = indexOfTerritory(territoryId);
+    return index >= 0 ? enemyNeighbors[index] : 0;
+  }
+
+  int getMaskWords() {
+    return topology.getMaskWords();
+  }
+
+  long getFrontierMaskWord(int player, int word) {
+    return frontierMasks[player * topology.getMaskWords() + word];
+  }
+
+  /**
+   * Return a bitset of the neighbors of the given territory, see getTerritoryBit(int). An empty
+   * bitset indicates that the territoryId is not present on the board. The returned array is a
+   * copy.
+   *
+   * @param territoryId the id of the territory
+   * @return a bitset of the neighboring territories
+   */
+  public long[] getNeighborMask(int territoryId) {
+    long[] mask = new long[topology.getMaskWords()];
+    int index = indexOfTerritory(territoryId);
+    if (index >= 0) {
+      for (int w = 0; w < mask.length; w++) {
+        mask[w] = topology.getNeighborMaskWord(index, w);
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Return the ids of the territories in the given bitset, see getTerritoryBit(int). Bits which do
+   * not stand for a territory are ignored.
+   *
+   * @param mask a bitset of territories
+   * @return a set of the ids of the territories in the bitset
+   */
+  public Set<Integer> getTerritoriesOfMask(long[] mask) {
+    Set<Integer> territories = new HashSet<>();
+    final int words = Math.min(mask.length, topology.getMaskWords());
+    for (int w = 0; w < words; w++) {
+      long bits = mask[w];
+      if (w == topology.getMaskWords() - 1 && topology.getNumberOfTerritories() % Long.SIZE != 0) {
+        bits &= (1L << topology.getNumberOfTerritories()) - 1;
+      }
+      addTerritoriesOfWord(territories, w, bits);
+    }
+    return territories;
   }
 
   /**
@@ -815,8 +1220,19 @@ public class RiskBoard {
    * @return the number of territories occupied by a given player.
    */
   public int getNrOfTerritoriesOccupiedByPlayer(final int playerId) {
-    return Math.toIntExact(territories.entrySet().stream()
-        .filter(entry -> entry.getValue().getOccupantPlayerId() == playerId).count());
+    return 0 <= playerId && playerId < numberOfPlayers ? playerTerritories[playerId] : 0;
+  }
+
+  /**
+   * Return the number of troops stationed in all territories occupied by the given player. Zero
+   * indicates that the player has no longer occupied any territories or that the player does not
+   * exist.
+   *
+   * @param playerId the id of the player
+   * @return the total number of troops of the given player
+   */
+  public int getNrOfTroopsOfPlayer(final int playerId) {
+    return 0 <= playerId && playerId < numberOfPlayers ? playerTroops[playerId] : 0;
   }
 
   /**
@@ -828,7 +1244,7 @@ public class RiskBoard {
    * @return true iff there is any territory with the playerId as occupantId
    */
   public boolean isPlayerStillAlive(final int playerId) {
-    return territories.values().stream().anyMatch(t -> t.getOccupantPlayerId() == playerId);
+    return getNrOfTerritoriesOccupiedByPlayer(playerId) > 0;
   }
 
   /**
@@ -842,10 +1258,19 @@ public class RiskBoard {
    * troop stationed.
    */
   public Set<Integer> getTerritoriesOccupiedByPlayerWithMoreThanOneTroops(final int playerId) {
-    return territories.entrySet().stream()
-        .filter(entry -> entry.getValue().getOccupantPlayerId() == playerId
-            && entry.getValue().getTroops() > 1).map(Entry::getKey)
-        .collect(Collectors.toSet());
+    Set<Integer> occupiedTerritories = new HashSet<>();
+    if (0 <= playerId && playerId < numberOfPlayers) {
+      final int offset = playerId * topology.getMaskWords();
+      for (int w = 0; w < topology.getMaskWords(); w++) {
+        for (long bits = playerMasks[offset + w]; bits != 0; bits &= bits - 1) {
+          final int index = w * Long.SIZE + Long.numberOfTrailingZeros(bits);
+          if (territoryTroops[index] > 1) {
+            occupiedTerritories.add(topology.getTerritoryId(index));
+          }
+        }
+      }
+    }
+    return occupiedTerritories;
   }
 
   void startAttack(int attackingId, int defendingId, int troops) {
@@ -858,12 +1283,64 @@ public class RiskBoard {
     return phase == RiskPhase.ATTACK && attackingId >= 0 && defendingId >= 0 && troops > 0;
   }
 
+  int getAttackingId() {
+    return attackingId;
+  }
+
+  int getDefendingId() {
+    return defendingId;
+  }
+
+  /**
+   * Samples the troops left at the end of the current battle if it is repeated until it is decided,
+   * see BattleOracle.sampleSurvivors(). Every round is fought with as many of the troops of the
+   * attack as are still allowed to attack, i.e. it is a battle of all mobile troops under the dice
+   * limit of the attack.
+   */
+  int sampleBattleSurvivors(SplittableRandom random) {
+    BattleOracle battleOracle = troops < maxAttackerDice
+        ? BattleOracle.of(troops, maxDefenderDice) : getBattleOracle();
+    return battleOracle.sampleSurvivors(getMobileTroops(attackingId),
+        getTerritoryTroops(defendingId), random);
+  }
+
+  /**
+   * Returns true iff the given casualties decide the current battle, i.e. exactly one of the
+   * attacker running out of mobile troops and the defending territory running out of troops.
+   */
+  boolean isBattleOutcome(int attackerCasualties, int defendingCasualties) {
+    if (!isAttack() || attackerCasualties < 0 || defendingCasualties < 0) {
+      return false;
+    }
+    int attackers = getMobileTroops(attackingId);
+    int defenders = getTerritoryTroops(defendingId);
+    return (attackerCasualties == attackers && defendingCasualties < defenders)
+        || (attackerCasualties < attackers && defendingCasualties == defenders);
+  }
+
+  /**
+   * Ends the current battle with the casualties of all of its rounds. The winner loses no troops in
+   * the final round, so the battle ends as if that round was fought with as many troops as the
+   * attack still allows.
+   */
+  int endBattle(int attackerCasualties, int defendingCasualties) {
+    if (isAttack()) {
+      int allowedTroops = getMobileTroops(attackingId) - attackerCasualties;
+      if (!occupyOnlyWithAttackingArmies) {
+        allowedTroops = Math.min(allowedTroops, maxAttackerDice);
+      }
+      troops = Math.min(troops, allowedTroops) + attackerCasualties;
+    }
+    return endAttack(attackerCasualties, defendingCasualties);
+  }
+
   int endAttack(int attackerCasualties, int defendingCasualties) {
     int attackerId = getTerritoryOccupantId(attackingId);
     if (isAttack()) {
-      territories.get(attackingId).removeTroops(attackerCasualties);
-      territories.get(defendingId).removeTroops(defendingCasualties);
+      addTroopsAt(indexOfTerritory(attackingId), -attackerCasualties);
+      addTroopsAt(indexOfTerritory(defendingId), -defendingCasualties);
       troops -= attackerCasualties;
+      own(INVOLVED_TROOPS_IN_ATTACKS);
       involvedTroopsInAttacks.compute(attackingId,
           (k, v) -> (v == null) ? (troops)
               : Math.max(v, troops));
@@ -900,20 +1377,12 @@ public class RiskBoard {
   }
 
   void occupy(int troops) {
-    territories.get(attackingId).removeTroops(troops);
-    territories.get(defendingId).addTroops(troops);
+    addTroopsAt(indexOfTerritory(attackingId), -troops);
+    addTroopsAt(indexOfTerritory(defendingId), troops);
+    own(INVOLVED_TROOPS_IN_ATTACKS);
     involvedTroopsInAttacks
         .compute(attackingId, (k, v) -> v == null ? 0 : Math.max(0, v - troops));
     involvedTroopsInAttacks.compute(defendingId, (k, v) -> v == null ? troops : v + troops);
-    if (!fortifyOnlyFromSingleTerritory) {
-      int attackerId = getTerritoryOccupantId(attackingId);
-      for (Integer neighbor : neighboringFriendlyTerritories(defendingId)) {
-        DefaultEdge edge = fortifyConnectivityGraph.get(attackerId).addEdge(neighbor, defendingId);
-        fortifyConnectivityInspector.get(attackerId).edgeAdded(
-            new GraphEdgeChangeEvent<>(this, GraphEdgeChangeEvent.EDGE_ADDED, edge, neighbor,
-                defendingId));
-      }
-    }
     attackingId = -1;
     defendingId = -1;
     this.troops = 0;
@@ -933,11 +1402,8 @@ public class RiskBoard {
       return PriestLogic.fromBoolean(
           territoriesOccupied(player, mission.getTargetIds(), mission.getOccupyingWith()));
     } else if (mission.getRiskMissionType() == RiskMissionType.CONQUER_CONTINENT) {
-      Set<Integer> conqueredContinents = playerConqueredContinents()
-          .getOrDefault(player, Collections.emptySet());
-      return PriestLogic.fromBoolean(conqueredContinents.size() >= mission.getTargetIds().size()
-          && mission.getTargetIds().stream().filter(i -> i >= 0)
-          .allMatch(conqueredContinents::contains));
+      return PriestLogic.fromBoolean(continentsConquered(player,
+          nrOfContinentsConqueredByPlayer(player), mission.getTargetIds()));
     }
 
     return PriestLogic.FALSE;
@@ -948,14 +1414,10 @@ public class RiskBoard {
       return PriestLogic
           .fromBoolean(mission.getTargetIds().stream().noneMatch(this::isPlayerStillAlive));
     } else if (mission.getRiskMissionType() == RiskMissionType.CONQUER_CONTINENT) {
-      return PriestLogic.fromBoolean(playerConqueredContinents().entrySet().stream()
-          .anyMatch(
-              e -> e.getValue().size() >= mission.getTargetIds().size()
-                  //at least the required amount of continents are conquered
-                  && mission.getTargetIds().stream().filter(id -> id >= 0)
-                  .allMatch(
-                      id -> e.getValue()
-                          .contains(id)))); //all the required continents are conquered
+      return PriestLogic.fromBoolean(IntStream.range(0, numberOfPlayers).anyMatch(p -> {
+        int conquered = nrOfContinentsConqueredByPlayer(p);
+        return conquered > 0 && continentsConquered(p, conquered, mission.getTargetIds());
+      }));
     } else if (mission.getRiskMissionType() == RiskMissionType.OCCUPY_TERRITORY) {
       return PriestLogic.fromBoolean(IntStream.range(0, numberOfPlayers).anyMatch(
           p -> territoriesOccupied(p, mission.getTargetIds(), mission.getOccupyingWith())));
@@ -978,14 +1440,29 @@ public class RiskBoard {
     return PriestLogic.FALSE;
   }
 
-  private boolean continentsConquered(int player, Collection<Integer> targetIds) {
-    return targetIds.stream().allMatch(c -> continentConquered(player, c));
+  private boolean continentConquered(int player, int continent) {
+    int index = topology.indexOfContinent(continent);
+    return index >= 0 && continentConqueredAt(player, index);
   }
 
-  private boolean continentConquered(int player, int continent) {
-    return continents.containsKey(continent) && territories.values().stream()
-        .filter(t -> t.getContinentId() == continent)
-        .allMatch(t -> t.getOccupantPlayerId() == player);
+  private boolean continentConqueredAt(int player, int continent) {
+    return continentOwners[continent] == player;
+  }
+
+  private int nrOfContinentsConqueredByPlayer(int player) {
+    int conquered = 0;
+    for (int owner : continentOwners) {
+      if (owner == player) {
+        conquered++;
+      }
+    }
+    return conquered;
+  }
+
+  private boolean continentsConquered(int player, int conquered, Collection<Integer> targetIds) {
+    return conquered >= targetIds.size() // at least the required amount of continents conquered
+        && targetIds.stream().filter(id -> id >= 0)
+        .allMatch(id -> continentConquered(player, id)); // all required continents conquered
   }
 
   private boolean territoriesOccupied(int player, Collection<Integer> targetIds, int atLeast) {
@@ -999,43 +1476,6 @@ public class RiskBoard {
         .allMatch(occupiedTerritories::contains); // all required territories occupied
   }
 
-  private Map<Integer, Set<Integer>> playerConqueredContinents() {
-    Map<Integer, Map<Integer, RiskTerritory>> continents = new HashMap<>();
-    for (Entry<Integer, RiskTerritory> territory : territories.entrySet()) {
-      int continent = territory.getValue().getContinentId();
-      continents.putIfAbsent(continent, new HashMap<>());
-      continents.get(continent).put(territory.getKey(), territory.getValue());
-    }
-
-    Set<Integer> toRemove = new TreeSet<>();
-
-    for (Entry<Integer, Map<Integer, RiskTerritory>> continent : continents.entrySet()) {
-      if (continent.getValue().values().stream().mapToInt(RiskTerritory::getOccupantPlayerId)
-          .distinct().count() != 1) {
-        toRemove.add(continent.getKey());
-      }
-    }
-
-    for (Integer remove : toRemove) {
-      continents.remove(remove);
-    }
-
-    Map<Integer, Set<Integer>> playerConqueredContinents = new HashMap<>();
-
-    for (Entry<Integer, Map<Integer, RiskTerritory>> continent : continents.entrySet()) {
-      int player = continent.getValue().values().stream().findFirst()
-          .map(RiskTerritory::getOccupantPlayerId).orElse(-1);
-
-      if (player >= 0) {
-        playerConqueredContinents.putIfAbsent(player, new TreeSet<>());
-        playerConqueredContinents.get(player).add(continent.getKey());
-      }
-
-    }
-
-    return playerConqueredContinents;
-  }
-
   /**
    * Return a set of ids which are fortifyable given that there are enough troops in the specified
    * territory. An empty set either indicates that the territory does not exist or that it is
@@ -1049,13 +1489,57 @@ public class RiskBoard {
       return neighboringFriendlyTerritories(territoryId);
     }
 
-    int player = getTerritoryOccupantId(territoryId);
-    Set<Integer> fortifyableTerritories = fortifyConnectivityInspector.get(player)
-        .connectedSetOf(territoryId);
-    fortifyableTerritories.remove(territoryId);
+    Set<Integer> fortifyableTerritories = new HashSet<>();
+    int index = indexOfTerritory(territoryId);
+    if (index < 0 || territoryOccupants[index] < 0) {
+      return fortifyableTerritories;
+    }
+    final int[] components = getFortifyComponents();
+    for (int i = 0; i < components.length; i++) {
+      if (i != index && components[i] == components[index]) {
+        fortifyableTerritories.add(topology.getTerritoryId(i));
+      }
+    }
     return fortifyableTerritories;
   }
 
+  /**
+   * Returns for every territory index the component of territories connected via territories of
+   * the same occupant. The labeling is computed lazily, dropped whenever an occupant changes and
+   * shared between copies as long as it stays valid.
+   */
+  private int[] getFortifyComponents() {
+    if (fortifyComponents != null) {
+      return fortifyComponents;
+    }
+    final int numberOfTerritories = territoryOccupants.length;
+    int[] components = new int[numberOfTerritories];
+    Arrays.fill(components, -1);
+    int[] queue = new int[numberOfTerritories];
+    for (int start = 0; start < numberOfTerritories; start++) {
+      if (components[start] >= 0) {
+        continue;
+      }
+      final int occupant = territoryOccupants[start];
+      int head = 0;
+      int tail = 0;
+      queue[tail++] = start;
+      components[start] = start;
+      while (head < tail) {
+        int current = queue[head++];
+        for (int n = topology.neighborsStart(current); n < topology.neighborsEnd(current); n++) {
+          int neighbor = topology.getNeighbor(n);
+          if (components[neighbor] < 0 && territoryOccupants[neighbor] == occupant) {
+            components[neighbor] = start;
+            queue[tail++] = neighbor;
+          }
+        }
+      }
+    }
+    fortifyComponents = components;
+    return components;
+  }
+
   /**
    * Check if the territory from fortifyingId can succesfully fortify fortifiedId. This requires
    * depending on the rule set a path of friendly territories or them being neighbors. Note that
@@ -1068,21 +1552,37 @@ public class RiskBoard {
    */
   public boolean canFortify(int fortifyingId, int fortifiedId) {
     int occupant = getTerritoryOccupantId(fortifyingId);
-    return occupant >= 0 && occupant == getTerritoryOccupantId(fortifiedId)
-        && (fortifyOnlyFromSingleTerritory || fortifyConnectivityInspector.get(occupant)
-        .pathExists(fortifyingId, fortifiedId))
-        && (!fortifyOnlyFromSingleTerritory || areNeighbors(fortifyingId, fortifiedId));
+    if (occupant < 0 || occupant != getTerritoryOccupantId(fortifiedId)) {
+      return false;
+    }
+    return canFortifyAt(indexOfTerritory(fortifyingId), indexOfTerritory(fortifiedId));
+  }
+
+  /**
+   * Like canFortify, but takes territory indices and assumes both territories to be occupied by the
+   * same player.
+   */
+  boolean canFortifyAt(int fortifyingIndex, int fortifiedIndex) {
+    if (fortifyOnlyFromSingleTerritory) {
+      return topology.areNeighbors(fortifyingIndex, fortifiedIndex);
+    }
+    final int[] components = getFortifyComponents();
+    return components[fortifyingIndex] == components[fortifiedIndex];
   }
 
   void fortify(int fortifyingId, int fortifiedId, int troops) {
-    territories.get(fortifyingId).removeTroops(troops);
-    territories.get(fortifiedId).addTroops(troops);
+    addTroopsAt(indexOfTerritory(fortifyingId), -troops);
+    addTroopsAt(indexOfTerritory(fortifiedId), troops);
   }
 
   boolean isFortifyOnlyFromSingleTerritory() {
     return fortifyOnlyFromSingleTerritory;
   }
 
+  boolean isFortifyOnlyWithNonFightingArmies() {
+    return fortifyOnlyWithNonFightingArmies;
+  }
+
   /**
    * Return the number of troops which are allowed to fortify from this territoryId. Under the
    * default ruleset this is equal to the number of mobile troops. With
@@ -1094,86 +1594,44 @@ public class RiskBoard {
   public int getFortifyableTroops(int territoryId) {
     int troops = getTerritoryTroops(territoryId);
     if (fortifyOnlyWithNonFightingArmies) {
-      troops -= involvedTroopsInAttacks.get(territoryId);
+      troops -= involvedTroopsInAttacks.getOrDefault(territoryId, 0);
     }
 
     return Math.min(troops, getMobileTroops(territoryId));
   }
 
-  private boolean containsTradeableSet(Multiset<Integer> cardTypes) {
-    if (cardTypes.size() < cardTypesWithoutJoker) {
-      return false;
-    }
-    int jokers = cardTypes.contains(RiskCard.JOKER) ? 1 : 0;
-
-    int wildcards = cardTypes.count(RiskCard.WILDCARD);
-
-    if (jokers + wildcards >= cardTypesWithoutJoker) {
-      return true;
-    }
-
-    int[] count = IntStream.rangeClosed(1, cardTypesWithoutJoker).map(cardTypes::count).toArray();
-
-    int mostCards = Arrays.stream(count).max().orElse(0);
-
-    if (mostCards + jokers + wildcards >= cardTypesWithoutJoker) {
-      return true;
-    }
-
-    int distinctCards = Arrays.stream(count).map(i -> i <= 0 ? 0 : 1).sum();
-    return distinctCards + jokers + wildcards >= cardTypesWithoutJoker;
-  }
-
-  private boolean containsTradeableSet(List<RiskCard> playerCards) {
-    if (!withCards || playerCards.size() < cardTypesWithoutJoker) {
-      return false;
+  /**
+   * Returns the packed cards of the given player, or no cards if the player does not hold any.
+   */
+  private short[] handOf(int player) {
+    if (!withCards || playerCards == null || player < 0 || player >= numberOfPlayers) {
+      return NO_CARDS;
     }
-    return containsTradeableSet(playerCards.stream().map(RiskCard::getCardType)
-        .collect(ImmutableMultiset.toImmutableMultiset()));
+    return playerCards[player];
   }
 
-  private boolean canTradeInAsSet(Multiset<Integer> cardTypes) {
-
-    int jokers = cardTypes.count(RiskCard.JOKER);
-
-    if (jokers > 1) {
-      return false;
-    }
-
-    int wildcards = cardTypes.count(RiskCard.WILDCARD);
-
-    if (jokers + wildcards == cardTypesWithoutJoker) {
-      return true;
-    }
-
-    int[] count = IntStream.rangeClosed(1, cardTypesWithoutJoker).map(cardTypes::count).toArray();
-
-    int mostCards = Arrays.stream(count).max().orElse(0);
-
-    if (mostCards + jokers + wildcards == cardTypesWithoutJoker) {
-      return true;
+  private RiskCard unpackCard(short card) {
+    final int cardType = RiskCard.unpackCardType(card);
+    if (cardType == RiskCard.WILDCARD) {
+      return RiskCard.wildcard;
     }
-
-    int distinctCards = Arrays.stream(count).map(i -> i <= 0 ? 0 : 1).sum();
-    return distinctCards + jokers + wildcards == cardTypesWithoutJoker;
+    final int index = RiskCard.unpackTerritoryIndex(card);
+    return new RiskCard(cardType, index >= 0 ? topology.getTerritoryId(index) : -1);
   }
 
-  private boolean canTradeInAsSet(List<RiskCard> playerCards) {
-    if (playerCards.size() != cardTypesWithoutJoker) {
-      return false;
+  private List<RiskCard> unpackCards(short[] cards, int from, int to) {
+    List<RiskCard> unpacked = new ArrayList<>(to - from);
+    for (int i = from; i < to; i++) {
+      unpacked.add(unpackCard(cards[i]));
     }
-
-    return canTradeInAsSet(playerCards.stream().map(RiskCard::getCardType)
-        .collect(ImmutableMultiset.toImmutableMultiset()));
-
+    return Collections.unmodifiableList(unpacked);
   }
 
   boolean canTradeInAsSet(Set<Integer> slotIds, int player) {
-    if (!withCards || playerCards == null || !playerCards.containsKey(player)) {
+    if (!withCards || playerCards == null || player < 0 || player >= numberOfPlayers) {
       return false;
     }
-    return canTradeInAsSet(slotIds.stream().map(i -> playerCards.get(player).get(i).getCardType())
-        .collect(ImmutableMultiset.toImmutableMultiset()));
+    return topology.getTradeInTable().isTradeableSet(playerCards[player], slotIds);
   }
 
   /**
@@ -1184,12 +1642,7 @@ public class RiskBoard {
    * @return true iff the given player has enough cards and they could contain a set.
    */
   public boolean couldTradeInCards(int player) {
-    if (!withCards || playerCards == null || !playerCards.containsKey(player)) {
-      return false;
-    }
-
-    List<RiskCard> riskCards = getPlayerCards(player);
-    return containsTradeableSet(riskCards);
+    return topology.getTradeInTable().containsTradeableSet(handOf(player));
   }
 
   /**
@@ -1200,81 +1653,41 @@ public class RiskBoard {
    * @return true iff the given player's card slots are full.
    */
   public boolean hasToTradeInCards(int player) {
-    return withCards && playerCards.containsKey(player)
-        && playerCards.get(player).size() >= cardSlots();
+    return withCards && handOf(player).length >= cardSlots();
   }
 
-  private Set<Set<Integer>> getTradeInSlotCandidates(int player) {
-    if (!withCards || playerCards == null || !playerCards.containsKey(player)) {
-      return Collections.emptySet();
-    }
-    final int playerCardsSize = playerCards.get(player).size();
-
-    if (cardTypesWithoutJoker == 3) {
-      if (playerCardsSize < 3) {
-        return Collections.emptySet();
-      }
-      if (playerCardsSize == 3) {
-        return TRADE_IN_3_OUT_OF_3;
-      }
-      if (playerCardsSize == 4) {
-        return TRADE_IN_3_OUT_OF_4;
-      }
-      return TRADE_IN_3_OUT_OF_5;
+  /**
+   * Returns the tradeable sets of the given player as bitmasks of card slots. The returned array is
+   * shared and must not be modified.
+   */
+  int[] getTradeInSlots(int player) {
+    final short[] hand = handOf(player);
+    if (hand.length == 0) {
+      return TradeInTable.NO_SETS;
     }
-
-    return Sets.combinations(IntStream.range(0, playerCardsSize).boxed().collect(
-        Collectors.toSet()), cardTypesWithoutJoker);
+    return topology.getTradeInTable().getTradeableSets(hand);
   }
 
   /**
-   * Checks if the slot is a tradeable set.
+   * Return a immutable list of the cards of a given player. Note that in uncanonical games this
+   * might contain wildcards.
    *
-   * @param slotIds - the ids of the set
-   * @param player - the player
-   * @return true if it is a valid set
+   * @param player the id of the player
+   * @return a list of cards of a given player.
    */
-  private boolean checkSlotCandidateDefault(Set<Integer> slotIds, int player) {
-    if (!withCards || playerCards == null || !playerCards.containsKey(player)
-        || slotIds.size() != cardTypesWithoutJoker) {
-      return false;
-    }
-
-    ImmutableMultiset<Integer> cardtypes = slotIds.stream()
-        .map(i -> playerCards.get(player).get(i).getCardType())
-        .collect(ImmutableMultiset.toImmutableMultiset());
-
-    return SETS_3_OUT_OF_5.contains(cardtypes);
-  }
-
-  private boolean checkSlotCandidate(Set<Integer> slotIds, int player) {
-    if (!withCards || playerCards == null || !playerCards.containsKey(player)
-        || slotIds.size() != cardTypesWithoutJoker) {
-      return false;
-    }
-
-    if (cardTypesWithoutJoker == 3) {
-      return checkSlotCandidateDefault(slotIds, player);
-    }
-
-    return canTradeInAsSet(slotIds, player);
-  }
-
-  Set<Set<Integer>> getTradeInSlots(int player) {
-    return getTradeInSlotCandidates(player).stream().filter(c -> checkSlotCandidate(c, player))
-        .collect(Collectors.toUnmodifiableSet());
+  public List<RiskCard> getPlayerCards(int player) {
+    final short[] hand = handOf(player);
+    return unpackCards(hand, 0, hand.length);
   }
 
   /**
-   * Return a immutable list view of the cards of a given player. Note that in uncanonical games
-   * this might contain wildcards.
+   * Return the number of cards of a given player.
    *
    * @param player the id of the player
-   * @return a list of cards of a given player.
+   * @return the number of cards of the player
    */
-  public List<RiskCard> getPlayerCards(int player) {
-    return Collections
-        .unmodifiableList(playerCards.getOrDefault(player, Collections.emptyList()));
+  public int getNrOfPlayerCards(int player) {
+    return handOf(player).length;
   }
 
   private int cardSlots() {
@@ -1287,8 +1700,7 @@ public class RiskBoard {
   }
 
   boolean allowedToTradeIn(int player) {
-    return withCards && (isReinforcementPhase()
-        || playerCards.getOrDefault(player, Collections.emptyList()).size() >= cardSlots());
+    return withCards && (isReinforcementPhase() || handOf(player).length >= cardSlots());
   }
 
   /**
@@ -1299,14 +1711,7 @@ public class RiskBoard {
    * @return the number of troops awarded by the nth trade in.
    */
   public int getTradeInBonus(int n) {
-    if (n < 0) {
-      return 0;
-    }
-    if (n >= tradeInBonus.length) {
-      return tradeInBonus[tradeInBonus.length - 1] + (n - tradeInBonus.length + 1)
-          * maxExtraBonus;
-    }
-    return tradeInBonus[n];
+    return topology.getTradeInBonus(n);
   }
 
   /**
@@ -1319,34 +1724,60 @@ public class RiskBoard {
   }
 
   void tradeIn(Set<Integer> cardIds, int player) {
-    List<RiskCard> cards = cardIds.stream()
-        .map(i -> playerCards.get(player).get(i)).collect(Collectors.toCollection(LinkedList::new));
-    this.discardPile.addAll(cards);
-    tradeInTerritories = cards.stream().filter(
-        c -> c.getCardType() != RiskCard.WILDCARD && c.getCardType() != RiskCard.JOKER
-            && getTerritoryOccupantId(c.getTerritoryId()) == player).map(RiskCard::getTerritoryId)
-        .collect(Collectors.toUnmodifiableSet());
-
-    Set<Integer> discarded = this.discardPile.stream().map(RiskCard::getTerritoryId).collect(
-        Collectors.toUnmodifiableSet());
-
-    long maxPossible = territories.entrySet().stream().filter(
-        t -> t.getValue().getOccupantPlayerId() == player && !discarded.contains(t.getKey()))
-        .count();
+    final short[] hand = playerCards[player];
+    final boolean[] traded = new boolean[hand.length];
+    Set<Integer> territories = new HashSet<>();
+    int numberOfWildcards = 0;
+    own(DISCARD_PILE);
+    for (int slot : cardIds) {
+      final short card = hand[slot];
+      traded[slot] = true;
+      discardPile[discardPileSize++] = card;
+      final int cardType = RiskCard.unpackCardType(card);
+      final int index = RiskCard.unpackTerritoryIndex(card);
+      if (cardType == RiskCard.WILDCARD) {
+        numberOfWildcards++;
+      } else if (cardType != RiskCard.JOKER && index >= 0 && territoryOccupants[index] == player) {
+        territories.add(topology.getTerritoryId(index));
+      }
+    }
+    tradeInTerritories = Collections.unmodifiableSet(territories);
+    ownedComponents &= ~TRADE_IN_TERRITORIES;
+
+    final boolean[] discarded = new boolean[territoryOccupants.length];
+    for (int i = 0; i < discardPileSize; i++) {
+      final int index = RiskCard.unpackTerritoryIndex(discardPile[i]);
+      if (index >= 0) {
+        discarded[index] = true;
+      }
+    }
 
-    long numberOfWildcards = cards.stream().filter(c -> c.getCardType() == RiskCard.WILDCARD)
-        .count();
+    long maxPossible = 0;
+    for (int i = 0; i < territoryOccupants.length; i++) {
+      if (territoryOccupants[i] == player && !discarded[i]) {
+        maxPossible++;
+      }
+    }
 
     minMatchingTerritories = tradeInTerritories.size();
     maxMatchingTerritories =
         minMatchingTerritories + (int) Math.min(numberOfWildcards, maxPossible);
-    this.playerCards.get(player).removeAll(cards);
-    reinforcedTerritories.clear();
+
+    final short[] remaining = new short[hand.length - cardIds.size()];
+    for (int slot = 0, i = 0; slot < hand.length; slot++) {
+      if (!traded[slot]) {
+        remaining[i++] = hand[slot];
+      }
+    }
+    own(PLAYER_CARDS);
+    playerCards[player] = remaining;
+    clearReinforcedTerritories();
     phase = RiskPhase.REINFORCEMENT;
     tradedInId = player;
   }
 
   void awardBonus(int nrOfMatchingTerritories, int player) {
+    own(NON_DEPLOYED_REINFORCEMENTS);
     this.nonDeployedReinforcements[player] +=
         getTradeInBonus() + nrOfMatchingTerritories * tradeInTerritoryBonus;
     tradeIns++;
@@ -1389,16 +1820,28 @@ public class RiskBoard {
    * @return the number of cards left in the deck of cards.
    */
   public int getCardsLeft() {
-    return deckOfCards.size();
+    return deckOfCards != null ? deckOfCards.length - deckTop : 0;
   }
 
   /**
-   * Return a immutable view of the discarded pile.
+   * Return a immutable list of the discarded pile.
    *
    * @return the discarded pile.
    */
   public Collection<RiskCard> getDiscardedPile() {
-    return Collections.unmodifiableList(discardPile);
+    if (discardPile == null) {
+      return Collections.emptyList();
+    }
+    return unpackCards(discardPile, 0, discardPileSize);
+  }
+
+  /**
+   * Return the number of cards in the discarded pile.
+   *
+   * @return the number of discarded cards.
+   */
+  public int getNrOfDiscardedCards() {
+    return discardPile != null ? discardPileSize : 0;
   }
 
   /**
@@ -1411,30 +1854,123 @@ public class RiskBoard {
     if (!withCards || playerCards == null || discardPile == null || deckOfCards == null) {
       return 0;
     }
-    return playerCards.values().stream().mapToInt(List::size).sum() + discardPile.size()
-        + deckOfCards.size();
+    int numberOfCards = discardPileSize + getCardsLeft();
+    for (short[] hand : playerCards) {
+      numberOfCards += hand.length;
+    }
+    return numberOfCards;
   }
 
   int getTradedInId() {
     return tradedInId;
   }
 
-  void drawCardIfPossible(int player) {
-    if (withCards && hasOccupiedCountry && playerCards.containsKey(player)) {
-      if (deckOfCards.isEmpty()) {
-        reshuffle();
+  void drawCardIfPossible(int player, SplittableRandom random) {
+    if (withCards && hasOccupiedCountry && 0 <= player && player < numberOfPlayers) {
+      if (deckTop == deckOfCards.length) {
+        reshuffle(random);
       }
-      if (!deckOfCards.isEmpty()) {
-        playerCards.get(player).add(deckOfCards.pop());
+      if (deckTop < deckOfCards.length) {
+        final short[] hand = playerCards[player];
+        final short[] drawn = Arrays.copyOf(hand, hand.length + 1);
+        drawn[hand.length] = deckOfCards[deckTop++];
+        own(PLAYER_CARDS);
+        playerCards[player] = drawn;
       }
     }
   }
 
-  private void reshuffle() {
+  /**
+   * Replaces the empty deck by the shuffled discard pile. The discard pile itself is only emptied,
+   * so it does not need to be owned.
+   */
+  private void reshuffle(SplittableRandom random) {
     if (withCards && discardPile != null && deckOfCards != null) {
-      Collections.shuffle(discardPile);
-      deckOfCards.addAll(discardPile);
-      discardPile.clear();
+      deckOfCards = Arrays.copyOf(discardPile, discardPileSize);
+      shuffle(deckOfCards, random);
+      ownedComponents |= DECK_OF_CARDS;
+      deckTop = 0;
+      discardPileSize = 0;
+    }
+  }
+
+  /**
+   * Returns a 64 bit hash of the state of this board with the given player to move. The part
+   * covering the territories is maintained incrementally, the remaining state is small and mixed
+   * in on every call. The hidden order of the deck is not part of the hash, only its size.
+   */
+  long stateHash(int currentPlayer) {
+    long hash = territoryHash;
+    hash = combine(hash, currentPlayer);
+    hash = combine(hash, phase.ordinal());
+    hash = combine(hash, attackingId);
+    hash = combine(hash, defendingId);
+    hash = combine(hash, troops);
+    hash = combine(hash, hasOccupiedCountry ? 1 : 0);
+    hash = combine(hash, tradedInId);
+    hash = combine(hash, tradeIns);
+    hash = combine(hash, minMatchingTerritories);
+    hash = combine(hash, maxMatchingTerritories);
+    for (int reinforcements : nonDeployedReinforcements) {
+      hash = combine(hash, reinforcements);
+    }
+    hash = combine(hash, unorderedHash(reinforcedTerritories));
+    hash = combine(hash, tradeInTerritories != null ? unorderedHash(tradeInTerritories) : -1);
+    long involvedTroopsHash = 0L;
+    for (Entry<Integer, Integer> involvedTroops : involvedTroopsInAttacks.entrySet()) {
+      involvedTroopsHash += RiskTopology
+          .mix(combine(involvedTroops.getKey(), involvedTroops.getValue()));
+    }
+    hash = combine(hash, involvedTroopsHash);
+    if (playerCards != null) {
+      for (short[] hand : playerCards) {
+        hash = combine(hash, hand.length);
+        for (short card : hand) {
+          hash = combine(hash, card);
+        }
+      }
+    }
+    hash = combine(hash, deckOfCards != null ? deckOfCards.length - deckTop : -1);
+    hash = combine(hash, discardPile != null ? discardPileSize : -1);
+    return hash;
+  }
+
+  private static long combine(long hash, long value) {
+    return RiskTopology.mix(hash * 31 + value);
+  }
+
+  private static long unorderedHash(Collection<Integer> values) {
+    long hash = 0L;
+    for (int value : values) {
+      hash += RiskTopology.mix(value);
+    }
+    return hash;
+  }
+
+  /**
+   * Shuffles the list in place like Collections.shuffle() but draws from the given random, so that
+   * games can be replayed from their seed.
+   */
+  static <T> void shuffle(List<T> list, SplittableRandom random) {
+    if (list instanceof RandomAccess) {
+      for (int i = list.size(); i > 1; i--) {
+        Collections.swap(list, i - 1, random.nextInt(i));
+      }
+    } else {
+      Object[] array = list.toArray();
+      for (int i = array.length; i > 1; i--) {
+        int j = random.nextInt(i);
+        Object tmp = array[i - 1];
+        array[i - 1] = array[j];
+        array[j] = tmp;
+      }
+      ListIterator<T> iterator = list.listIterator();
+      for (Object element : array) {
+        iterator.next();
+        @SuppressWarnings("unchecked")
+        T t = (T) element;
+        iterator.set(t);
+      }
     }
   }
 
@@ -1442,26 +1978,44 @@ public class RiskBoard {
     stripOutCardInformation();
   }
 
+  /**
+   * Shuffles the cards in place with the same sequence of swaps as shuffle(List, SplittableRandom).
+   */
+  static void shuffle(short[] cards, SplittableRandom random) {
+    for (int i = cards.length; i > 1; i--) {
+      final int j = random.nextInt(i);
+      final short tmp = cards[i - 1];
+      cards[i - 1] = cards[j];
+      cards[j] = tmp;
+    }
+  }
+
   void stripOutUnknownInformation(int player) {
     stripOutCardInformation(player);
   }
 
+  /**
+   * Turns the cards left in the deck into wildcards. As they are indistinguishable afterwards the
+   * deck does not need to be shuffled.
+   */
   private void stripOutCardInformation() {
-    List<RiskCard> deckOfCards = this.deckOfCards.stream().map(c -> RiskCard.wildcard())
-        .collect(Collectors.toCollection(ArrayList::new));
-
-    Collections.shuffle(deckOfCards);
-
-    this.deckOfCards.clear();
-    this.deckOfCards.addAll(deckOfCards);
-
+    if (deckOfCards == null) {
+      return;
+    }
+    own(DECK_OF_CARDS);
+    Arrays.fill(deckOfCards, deckTop, deckOfCards.length, RiskCard.PACKED_WILDCARD);
   }
 
   private void stripOutCardInformation(int player) {
-    for (Entry<Integer, List<RiskCard>> playerCard : playerCards.entrySet()) {
-      int playerSlot = playerCard.getKey();
+    if (playerCards == null) {
+      return;
+    }
+    own(PLAYER_CARDS);
+    for (int playerSlot = 0; playerSlot < numberOfPlayers; playerSlot++) {
       if (playerSlot != player) {
-        playerCards.get(playerSlot).replaceAll(c -> RiskCard.wildcard());
+        short[] hand = new short[playerCards[playerSlot].length];
+        Arrays.fill(hand, RiskCard.PACKED_WILDCARD);
+        playerCards[playerSlot] = hand;
       }
     }
   }
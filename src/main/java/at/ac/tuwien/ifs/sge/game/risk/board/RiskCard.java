@@ -14,6 +14,11 @@ public class RiskCard {
   private static int JOKER_TERRITORY = (-1);
   public static final RiskCard joker = joker();
 
+  private static final int PACKED_TERRITORY_BITS = 12;
+  static final int MAX_PACKED_TERRITORIES = (1 << PACKED_TERRITORY_BITS) - 1;
+  static final int MAX_PACKED_TYPE = (1 << (Short.SIZE - PACKED_TERRITORY_BITS)) - 1;
+  static final short PACKED_WILDCARD = 0;
+
   private final int cardType;
   private final int territoryId;
 
@@ -30,6 +35,29 @@ public class RiskCard {
     return new RiskCard(JOKER, ++JOKER_TERRITORY);
   }
 
+  /**
+   * Packs a card into a single short as used by the board. The upper 4 bits hold cardType -
+   * WILDCARD, the lower 12 bits hold the territory index + 1, or 0 for cards without a territory.
+   * A wildcard packs to 0.
+   */
+  static short pack(int cardType, int territoryIndex) {
+    final int type = cardType - WILDCARD;
+    if (type < 0 || type > MAX_PACKED_TYPE || territoryIndex < -1
+        || territoryIndex >= MAX_PACKED_TERRITORIES) {
+      throw new IllegalArgumentException(
+          "Card " + cardType + "@" + territoryIndex + " cannot be packed");
+    }
+    return (short) ((type << PACKED_TERRITORY_BITS) | (territoryIndex + 1));
+  }
+
+  static int unpackCardType(short card) {
+    return ((card & 0xFFFF) >>> PACKED_TERRITORY_BITS) + WILDCARD;
+  }
+
+  static int unpackTerritoryIndex(short card) {
+    return (card & MAX_PACKED_TERRITORIES) - 1;
+  }
+
   public int getCardType() {
     return cardType;
   }
@@ -0,0 +1,369 @@
+package at.ac.tuwien.ifs.sge.game.risk.board;
+
+import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskConfiguration;
+import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskContinentConfiguration;
+import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskTerritoryConfiguration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+/**
+ * The immutable part of a board: territories, their adjacency, continents, card types and bonus
+ * tables. A topology is built once per game and shared by all copies of its boards. Territories
+ * and continents are addressed by a contiguous index, the adjacency is stored in compressed sparse
+ * row form.
+ */
+final class RiskTopology {
+
+  private static final int DENSE_INDEX_TABLE_MIN_SIZE = 64;
+  private static final long ZOBRIST_SEED = 0x5253_4B5A_4F42_5249L;
+  private static final long OCCUPANT_SALT = 0x9E37_79B9_7F4A_7C15L;
+  private static final long TROOPS_SALT = 0xC2B2_AE3D_27D4_EB4FL;
+
+  private final int[] territoryIds;
+  private final int[] territoryIndexTable;
+  private final Set<Integer> territoryIdSet;
+  private final int[] territoryContinentIds;
+  private final int[] territoryContinentIndices;
+  private final int[] territoryCardTypes;
+  private final int[] neighborOffsets;
+  private final int[] neighbors;
+  private final int maskWords;
+  private final long[] neighborMasks;
+  private final long[] territoryKeys;
+
+  private final Map<Integer, RiskContinent> continents;
+  private final int[] continentIds;
+  private final int[] continentBonuses;
+  private final int[] continentTerritoryOffsets;
+  private final int[] continentTerritories;
+
+  private final int[] tradeInBonus;
+  private final int maxExtraBonus;
+  private final BattleOdds battleOdds;
+  private final BattleOracle battleOracle;
+  private final TradeInTable tradeInTable;
+  private final String map;
+
+  RiskTopology(RiskConfiguration configuration) {
+    Set<RiskTerritoryConfiguration> territoriesConfiguration = new HashSet<>(
+        configuration.getTerritories());
+
+    territoryIds = territoriesConfiguration.stream()
+        .mapToInt(RiskTerritoryConfiguration::getTerritoryId).sorted().toArray();
+    territoryIndexTable = createTerritoryIndexTable(territoryIds);
+    territoryIdSet = Arrays.stream(territoryIds).boxed()
+        .collect(Collectors.toUnmodifiableSet());
+
+    final int numberOfTerritories = territoryIds.length;
+    territoryContinentIds = new int[numberOfTerritories];
+    territoryCardTypes = new int[numberOfTerritories];
+    int[][] adjacency = new int[numberOfTerritories][];
+    for (RiskTerritoryConfiguration territoryConfiguration : territoriesConfiguration) {
+      int index = indexOfTerritory(territoryConfiguration.getTerritoryId());
+      territoryContinentIds[index] = territoryConfiguration.getContinentId();
+      territoryCardTypes[index] = territoryConfiguration.getCardType();
+      adjacency[index] = neighborIndices(territoryConfiguration);
+    }
+
+    neighborOffsets = new int[numberOfTerritories + 1];
+    neighbors = symmetricNeighbors(adjacency, neighborOffsets);
+    maskWords = (numberOfTerritories + Long.SIZE - 1) / Long.SIZE;
+    neighborMasks = new long[numberOfTerritories * maskWords];
+    for (int i = 0; i < numberOfTerritories; i++) {
+      for (int n = neighborOffsets[i]; n < neighborOffsets[i + 1]; n++) {
+        neighborMasks[i * maskWords + (neighbors[n] >>> 6)] |= 1L << neighbors[n];
+      }
+    }
+    SplittableRandom random = new SplittableRandom(ZOBRIST_SEED);
+    territoryKeys = random.longs(numberOfTerritories).toArray();
+
+    continents = new HashSet<>(configuration.getContinents()).stream().collect(Collectors
+        .toUnmodifiableMap(RiskContinentConfiguration::getContinentId,
+            RiskContinentConfiguration::getContinent, (a, b) -> b));
+    continentIds = continents.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+    continentBonuses = Arrays.stream(continentIds).map(c -> continents.get(c).getTroopBonus())
+        .toArray();
+
+    territoryContinentIndices = new int[numberOfTerritories];
+    continentTerritoryOffsets = new int[continentIds.length + 1];
+    for (int i = 0; i < numberOfTerritories; i++) {
+      int continent = Arrays.binarySearch(continentIds, territoryContinentIds[i]);
+      territoryContinentIndices[i] = Math.max(-1, continent);
+      if (continent >= 0) {
+        continentTerritoryOffsets[continent + 1]++;
+      }
+    }
+    for (int c = 0; c < continentIds.length; c++) {
+      continentTerritoryOffsets[c + 1] += continentTerritoryOffsets[c];
+    }
+    continentTerritories = new int[continentTerritoryOffsets[continentIds.length]];
+    int[] fill = Arrays.copyOf(continentTerritoryOffsets, continentIds.length);
+    for (int i = 0; i < numberOfTerritories; i++) {
+      if (territoryContinentIndices[i] >= 0) {
+        continentTerritories[fill[territoryContinentIndices[i]]++] = i;
+      }
+    }
+
+    int[] configuredTradeInBonus = configuration.getTradeInBonus();
+    tradeInBonus = configuredTradeInBonus != null ? configuredTradeInBonus.clone() : null;
+    maxExtraBonus = configuration.getMaxExtraBonus();
+    battleOdds = BattleOdds.of(configuration.getMaxAttackerDice(),
+        configuration.getMaxDefenderDice());
+    battleOracle = BattleOracle.of(battleOdds);
+    tradeInTable = TradeInTable.of(configuration.getCardTypesWithoutJoker());
+    map = configuration.getMap();
+  }
+
+  /**
+   * Creates a table mapping territoryIds directly to their index. If the ids are too sparse for
+   * such a table null is returned and indices are looked up via binary search instead.
+   */
+  private static int[] createTerritoryIndexTable(int[] territoryIds) {
+    if (territoryIds.length == 0 || territoryIds[0] < 0) {
+      return null;
+    }
+    int maxId = territoryIds[territoryIds.length - 1];
+    if (maxId >= Math.max(DENSE_INDEX_TABLE_MIN_SIZE, 4 * territoryIds.length)) {
+      return null;
+    }
+    int[] territoryIndexTable = new int[maxId + 1];
+    Arrays.fill(territoryIndexTable, -1);
+    for (int i = 0; i < territoryIds.length; i++) {
+      territoryIndexTable[territoryIds[i]] = i;
+    }
+    return territoryIndexTable;
+  }
+
+  private int[] neighborIndices(RiskTerritoryConfiguration territoryConfiguration) {
+    Collection<Integer> connects = territoryConfiguration.getConnects();
+    if (connects == null) {
+      return new int[0];
+    }
+    int[] neighborIndices = new int[connects.size()];
+    int n = 0;
+    for (Integer connect : connects) {
+      int neighbor = indexOfTerritory(connect);
+      if (neighbor < 0) {
+        throw new IllegalArgumentException(
+            "Territory " + territoryConfiguration.getTerritoryId() + " connects to " + connect
+                + " which is not a territory");
+      }
+      if (connect == territoryConfiguration.getTerritoryId()) {
+        throw new IllegalArgumentException(
+            "Territory " + connect + " connects to itself");
+      }
+      neighborIndices[n++] = neighbor;
+    }
+    return neighborIndices;
+  }
+
+  /**
+   * Merges the adjacency lists into one compressed sparse row array. Every connection is added in
+   * both directions, each row is sorted and free of duplicates.
+   */
+  private static int[] symmetricNeighbors(int[][] adjacency, int[] offsets) {
+    final int numberOfTerritories = adjacency.length;
+    int[] degree = new int[numberOfTerritories];
+    for (int i = 0; i < numberOfTerritories; i++) {
+      for (int neighbor : adjacency[i]) {
+        degree[i]++;
+        degree[neighbor]++;
+      }
+    }
+    int[][] rows = new int[numberOfTerritories][];
+    for (int i = 0; i < numberOfTerritories; i++) {
+      rows[i] = new int[degree[i]];
+    }
+    Arrays.fill(degree, 0);
+    for (int i = 0; i < numberOfTerritories; i++) {
+      for (int neighbor : adjacency[i]) {
+        rows[i][degree[i]++] = neighbor;
+        rows[neighbor][degree[neighbor]++] = i;
+      }
+    }
+    for (int i = 0; i < numberOfTerritories; i++) {
+      rows[i] = Arrays.stream(rows[i]).sorted().distinct().toArray();
+      offsets[i + 1] = offsets[i] + rows[i].length;
+    }
+    int[] neighbors = new int[offsets[numberOfTerritories]];
+    for (int i = 0; i < numberOfTerritories; i++) {
+      System.arraycopy(rows[i], 0, neighbors, offsets[i], rows[i].length);
+    }
+    return neighbors;
+  }
+
+  int getNumberOfTerritories() {
+    return territoryIds.length;
+  }
+
+  Set<Integer> getTerritoryIds() {
+    return territoryIdSet;
+  }
+
+  /**
+   * Returns the index of the given territory. A negative number indicates that the territoryId
+   * does not exist.
+   */
+  int indexOfTerritory(int territoryId) {
+    if (territoryIndexTable != null) {
+      return 0 <= territoryId && territoryId < territoryIndexTable.length
+          ? territoryIndexTable[territoryId] : -1;
+    }
+    return Math.max(-1, Arrays.binarySearch(territoryIds, territoryId));
+  }
+
+  int getTerritoryId(int index) {
+    return territoryIds[index];
+  }
+
+  /**
+   * Returns true iff all territoryIds fit into the short an action code reserves for them, see
+   * RiskAction.toLong().
+   */
+  boolean hasShortTerritoryIds() {
+    return territoryIds.length == 0 || (Short.MIN_VALUE <= territoryIds[0]
+        && territoryIds[territoryIds.length - 1] <= Short.MAX_VALUE);
+  }
+
+  int getContinentId(int index) {
+    return territoryContinentIds[index];
+  }
+
+  int getCardType(int index) {
+    return territoryCardTypes[index];
+  }
+
+  int neighborsStart(int index) {
+    return neighborOffsets[index];
+  }
+
+  int neighborsEnd(int index) {
+    return neighborOffsets[index + 1];
+  }
+
+  int getNeighbor(int i) {
+    return neighbors[i];
+  }
+
+  int getDegree(int index) {
+    return neighborOffsets[index + 1] - neighborOffsets[index];
+  }
+
+  boolean areNeighbors(int index1, int index2) {
+    return (neighborMasks[index1 * maskWords + (index2 >>> 6)] & (1L << index2)) != 0;
+  }
+
+  /**
+   * Returns the number of longs of a bitset over all territories. Bit i of such a bitset is bit
+   * i % 64 of word i / 64 and stands for the territory at index i.
+   */
+  int getMaskWords() {
+    return maskWords;
+  }
+
+  long getNeighborMaskWord(int index, int word) {
+    return neighborMasks[index * maskWords + word];
+  }
+
+  /**
+   * Returns the Zobrist key of the given territory being occupied by the given player.
+   */
+  long occupantKey(int index, int occupant) {
+    return mix(territoryKeys[index] ^ (OCCUPANT_SALT * (occupant + 2)));
+  }
+
+  /**
+   * Returns the Zobrist key of the given territory holding the given number of troops. Keys are
+   * derived by mixing, so every troop count gets its own key without a table of bounded size.
+   */
+  long troopsKey(int index, int troops) {
+    return mix(territoryKeys[index] + TROOPS_SALT * (troops + 1));
+  }
+
+  /**
+   * Finalizer of the SplitMix64 generator, a bijection that spreads every input bit over the whole
+   * output.
+   */
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58_476D_1CE4_E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D0_49BB_1331_11EBL;
+    return z ^ (z >>> 31);
+  }
+
+  Map<Integer, RiskContinent> getContinents() {
+    return continents;
+  }
+
+  int getNumberOfContinents() {
+    return continentIds.length;
+  }
+
+  /**
+   * Returns the index of the given continent. A negative number indicates that the continentId
+   * does not exist.
+   */
+  int indexOfContinent(int continentId) {
+    return Math.max(-1, Arrays.binarySearch(continentIds, continentId));
+  }
+
+  int getContinentIdAt(int continent) {
+    return continentIds[continent];
+  }
+
+  int getContinentBonusAt(int continent) {
+    return continentBonuses[continent];
+  }
+
+  /**
+   * Returns the index of the continent the territory at the given index belongs to, or -1 if its
+   * continent is not present on the board.
+   */
+  int getContinentIndex(int index) {
+    return territoryContinentIndices[index];
+  }
+
+  int continentTerritoriesStart(int continent) {
+    return continentTerritoryOffsets[continent];
+  }
+
+  int continentTerritoriesEnd(int continent) {
+    return continentTerritoryOffsets[continent + 1];
+  }
+
+  int getContinentTerritory(int i) {
+    return continentTerritories[i];
+  }
+
+  int getTradeInBonus(int n) {
+    if (n < 0 || tradeInBonus == null || tradeInBonus.length == 0) {
+      return 0;
+    }
+    if (n >= tradeInBonus.length) {
+      return tradeInBonus[tradeInBonus.length - 1] + (n - tradeInBonus.length + 1)
+          * maxExtraBonus;
+    }
+    return tradeInBonus[n];
+  }
+
+  BattleOdds getBattleOdds() {
+    return battleOdds;
+  }
+
+  BattleOracle getBattleOracle() {
+    return battleOracle;
+  }
+
+  TradeInTable getTradeInTable() {
+    return tradeInTable;
+  }
+
+  String getMap() {
+    return map;
+  }
+
+}
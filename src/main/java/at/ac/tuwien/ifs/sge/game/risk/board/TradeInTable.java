@@ -0,0 +1,265 @@
+package at.ac.tuwien.ifs.sge.game.risk.board;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tradeable sets of cards for a given number of card types. A set consists of
+ * cardTypesWithoutJoker cards and is represented as a bitmask of the card slots of a hand of packed
+ * cards, see RiskCard.pack(). A hand is encoded as a number with one digit per slot holding the
+ * card type, for small hands a table maps this code directly to the bitmasks of all tradeable sets.
+ * Larger hands enumerate the candidate sets instead. Tables are immutable and shared between all
+ * games with the same number of card types.
+ */
+final class TradeInTable {
+
+  private static final int MAX_HAND_CODES = 1 << 12;
+  static final int[] NO_SETS = new int[0];
+
+  private static final Map<Integer, TradeInTable> CACHE = new ConcurrentHashMap<>();
+
+  private final int cardTypesWithoutJoker;
+  /**
+   * The digits of a hand code are cardType - WILDCARD, i.e. wildcards, jokers and the card types
+   * 1 to cardTypesWithoutJoker.
+   */
+  private final int radix;
+  private final int[][][] tradeableSets;
+
+  private TradeInTable(int cardTypesWithoutJoker) {
+    this.cardTypesWithoutJoker = cardTypesWithoutJoker;
+    radix = cardTypesWithoutJoker + 2;
+    int maxTabledHand = 0;
+    for (long codes = radix; codes <= MAX_HAND_CODES && maxTabledHand < Integer.SIZE - 1;
+        codes *= radix) {
+      maxTabledHand++;
+    }
+    tradeableSets = new int[maxTabledHand + 1][][];
+    for (int n = 0; n <= maxTabledHand; n++) {
+      int codes = 1;
+      for (int i = 0; i < n; i++) {
+        codes *= radix;
+      }
+      tradeableSets[n] = new int[codes][];
+      int[] cardTypes = new int[n];
+      for (int code = 0; code < codes; code++) {
+        for (int slot = 0, rest = code; slot < n; slot++, rest /= radix) {
+          cardTypes[slot] = rest % radix + RiskCard.WILDCARD;
+        }
+        tradeableSets[n][code] = enumerateTradeableSets(cardTypes, n);
+      }
+    }
+  }
+
+  /**
+   * Returns the table for the given number of card types. Tables are computed once and cached.
+   *
+   * @param cardTypesWithoutJoker - the number of card types, excluding jokers
+   * @return the table
+   */
+  static TradeInTable of(int cardTypesWithoutJoker) {
+    if (cardTypesWithoutJoker < 1) {
+      throw new IllegalArgumentException(
+          cardTypesWithoutJoker + " is an illegal number of card types");
+    }
+    return CACHE.computeIfAbsent(cardTypesWithoutJoker, TradeInTable::new);
+  }
+
+  private static int[] cardTypesOf(short[] hand) {
+    int[] cardTypes = new int[hand.length];
+    for (int slot = 0; slot < cardTypes.length; slot++) {
+      cardTypes[slot] = RiskCard.unpackCardType(hand[slot]);
+    }
+    return cardTypes;
+  }
+
+  /**
+   * Returns the code of the given hand, or -1 if the hand is too large for the table or contains
+   * an unknown card type.
+   */
+  private int handCode(short[] hand) {
+    final int n = hand.length;
+    if (n >= tradeableSets.length) {
+      return -1;
+    }
+    int code = 0;
+    for (int slot = n - 1; slot >= 0; slot--) {
+      final int digit = RiskCard.unpackCardType(hand[slot]) - RiskCard.WILDCARD;
+      if (digit < 0 || digit >= radix) {
+        return -1;
+      }
+      code = code * radix + digit;
+    }
+    return code;
+  }
+
+  /**
+   * Enumerates all subsets of cardTypesWithoutJoker out of n slots in ascending order of their
+   * bitmasks (Gosper's hack) and keeps the tradeable ones.
+   */
+  private int[] enumerateTradeableSets(int[] cardTypes, int n) {
+    if (n < cardTypesWithoutJoker || n >= Integer.SIZE) {
+      return NO_SETS;
+    }
+    int[] sets = NO_SETS;
+    int size = 0;
+    final int last = ((1 << cardTypesWithoutJoker) - 1) << (n - cardTypesWithoutJoker);
+    for (int slots = (1 << cardTypesWithoutJoker) - 1; ; ) {
+      if (isTradeableSet(cardTypes, slots)) {
+        if (size == sets.length) {
+          sets = Arrays.copyOf(sets, Math.max(4, 2 * size));
+        }
+        sets[size++] = slots;
+      }
+      if (slots == last) {
+        break;
+      }
+      final int lowest = slots & -slots;
+      final int ripple = slots + lowest;
+      slots = ripple | (((slots ^ ripple) >>> 2) / lowest);
+    }
+    return size == sets.length ? sets : Arrays.copyOf(sets, size);
+  }
+
+  /**
+   * Decides if the cards are a tradeable set: at most one joker and, with jokers and wildcards
+   * standing in for any type, either all of one type or all of different types.
+   */
+  private boolean isTradeableSet(int jokers, int wildcards, int mostCards, int distinctCards) {
+    if (jokers > 1) {
+      return false;
+    }
+    final int substitutes = jokers + wildcards;
+    return substitutes == cardTypesWithoutJoker
+        || mostCards + substitutes == cardTypesWithoutJoker
+        || distinctCards + substitutes == cardTypesWithoutJoker;
+  }
+
+  private boolean isTradeableSet(int[] cardTypes, int slots) {
+    int jokers = 0;
+    int wildcards = 0;
+    int mostCards = 0;
+    int distinctCards = 0;
+    for (int rest = slots; rest != 0; rest &= rest - 1) {
+      final int slot = Integer.numberOfTrailingZeros(rest);
+      final int cardType = cardTypes[slot];
+      if (cardType == RiskCard.JOKER) {
+        jokers++;
+      } else if (cardType == RiskCard.WILDCARD) {
+        wildcards++;
+      } else {
+        int same = 0;
+        boolean first = true;
+        for (int other = slots; other != 0; other &= other - 1) {
+          final int otherSlot = Integer.numberOfTrailingZeros(other);
+          if (cardTypes[otherSlot] == cardType) {
+            same++;
+            first &= otherSlot >= slot;
+          }
+        }
+        mostCards = Math.max(mostCards, same);
+        if (first) {
+          distinctCards++;
+        }
+      }
+    }
+    return isTradeableSet(jokers, wildcards, mostCards, distinctCards);
+  }
+
+  /**
+   * Returns the bitmasks of the slots of all tradeable sets in the given hand. The returned array
+   * must not be modified.
+   */
+  int[] getTradeableSets(short[] hand) {
+    final int code = handCode(hand);
+    if (code >= 0) {
+      return tradeableSets[hand.length][code];
+    }
+    return enumerateTradeableSets(cardTypesOf(hand), hand.length);
+  }
+
+  /**
+   * Checks if the given hand contains at least one tradeable set.
+   */
+  boolean containsTradeableSet(short[] hand) {
+    final int n = hand.length;
+    if (n < cardTypesWithoutJoker) {
+      return false;
+    }
+    final int code = handCode(hand);
+    if (code >= 0) {
+      return tradeableSets[n][code].length > 0;
+    }
+    int jokers = 0;
+    int wildcards = 0;
+    int mostCards = 0;
+    int distinctCards = 0;
+    for (int slot = 0; slot < n; slot++) {
+      final int cardType = RiskCard.unpackCardType(hand[slot]);
+      if (cardType == RiskCard.JOKER) {
+        jokers = 1;
+      } else if (cardType == RiskCard.WILDCARD) {
+        wildcards++;
+      } else {
+        int same = 0;
+        boolean first = true;
+        for (int other = 0; other < n; other++) {
+          if (RiskCard.unpackCardType(hand[other]) == cardType) {
+            same++;
+            first &= other >= slot;
+          }
+        }
+        mostCards = Math.max(mostCards, same);
+        if (first) {
+          distinctCards++;
+        }
+      }
+    }
+    final int substitutes = jokers + wildcards;
+    return substitutes >= cardTypesWithoutJoker
+        || mostCards + substitutes >= cardTypesWithoutJoker
+        || distinctCards + substitutes >= cardTypesWithoutJoker;
+  }
+
+  /**
+   * Checks if the cards in the given slots of the hand are a tradeable set. Like the cards
+   * themselves the slots are not checked to number exactly cardTypesWithoutJoker.
+   *
+   * @throws IndexOutOfBoundsException if a slot is not part of the hand
+   */
+  boolean isTradeableSet(short[] hand, Collection<Integer> slots) {
+    int jokers = 0;
+    int wildcards = 0;
+    int mostCards = 0;
+    int distinctCards = 0;
+    int seen = 0;
+    for (int slot : slots) {
+      final int cardType = RiskCard.unpackCardType(hand[slot]);
+      if (cardType == RiskCard.JOKER) {
+        jokers++;
+      } else if (cardType == RiskCard.WILDCARD) {
+        wildcards++;
+      } else {
+        int same = 0;
+        boolean first = true;
+        int position = 0;
+        for (int other : slots) {
+          if (RiskCard.unpackCardType(hand[other]) == cardType) {
+            same++;
+            first &= position >= seen;
+          }
+          position++;
+        }
+        mostCards = Math.max(mostCards, same);
+        if (first) {
+          distinctCards++;
+        }
+      }
+      seen++;
+    }
+    return isTradeableSet(jokers, wildcards, mostCards, distinctCards);
+  }
+
+}
@@ -0,0 +1,97 @@
+package at.ac.tuwien.ifs.sge.game.risk.sim;
+
+import java.util.Arrays;
+
+/**
+ * The outcome of a single simulated game.
+ */
+public final class GameResult {
+
+  private final long seed;
+  private final int numberOfActions;
+  private final boolean gameOver;
+  private final double[] utilities;
+
+  GameResult(long seed, int numberOfActions, boolean gameOver, double[] utilities) {
+    this.seed = seed;
+    this.numberOfActions = numberOfActions;
+    this.gameOver = gameOver;
+    this.utilities = utilities;
+  }
+
+  /**
+   * Return the seed the game was played with.
+   *
+   * @return the seed of the game
+   */
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Return the number of actions played, including the actions of the chance players.
+   *
+   * @return the number of actions
+   */
+  public int getNumberOfActions() {
+    return numberOfActions;
+  }
+
+  /**
+   * Return if the game ended, false if it was aborted after the maximum number of actions.
+   *
+   * @return true iff the game is over
+   */
+  public boolean isGameOver() {
+    return gameOver;
+  }
+
+  /**
+   * Return the winner of the game.
+   *
+   * @return the id of the winner, -1 if the game was aborted
+   */
+  public int getWinner() {
+    for (int p = 0; p < utilities.length; p++) {
+      if (utilities[p] > 0D) {
+        return p;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Return the utility value of the given player at the end of the game.
+   *
+   * @param player - the id of the player
+   * @return the utility value
+   */
+  public double getUtilityValue(int player) {
+    return utilities[player];
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (o == null || getClass() != o.getClass()) {
+      return false;
+    }
+    GameResult that = (GameResult) o;
+    return seed == that.seed && numberOfActions == that.numberOfActions
+        && gameOver == that.gameOver && Arrays.equals(utilities, that.utilities);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Long.hashCode(seed) + numberOfActions;
+  }
+
+  @Override
+  public String toString() {
+    return "GameResult{seed=" + seed + ", actions=" + numberOfActions + ", winner=" + getWinner()
+        + "}";
+  }
+
+}
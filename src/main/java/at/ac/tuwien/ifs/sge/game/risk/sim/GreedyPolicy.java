@@ -0,0 +1,47 @@
+package at.ac.tuwien.ifs.sge.game.risk.sim;
+
+import at.ac.tuwien.ifs.sge.game.risk.board.Risk;
+import at.ac.tuwien.ifs.sge.game.risk.board.Risk.UndoToken;
+import at.ac.tuwien.ifs.sge.game.risk.board.RiskAction;
+import java.util.SplittableRandom;
+
+final class GreedyPolicy implements RiskPolicy {
+
+  static final GreedyPolicy INSTANCE = new GreedyPolicy();
+
+  private GreedyPolicy() {
+  }
+
+  @Override
+  public RiskAction chooseAction(Risk risk, SplittableRandom random) {
+    final int player = risk.getCurrentPlayer();
+    RiskAction best = null;
+    double bestValue = Double.NEGATIVE_INFINITY;
+    int ties = 0;
+    for (RiskAction action : risk.getPossibleActions()) {
+      UndoToken token = risk.apply(action);
+      if (token == null) {
+        continue;
+      }
+      double value = risk.getHeuristicValue(player);
+      risk.undo(token);
+      if (value > bestValue) {
+        best = action;
+        bestValue = value;
+        ties = 1;
+      } else if (value == bestValue && random.nextInt(++ties) == 0) {
+        best = action;
+      }
+    }
+    if (best == null) {
+      throw new IllegalArgumentException("No possible actions");
+    }
+    return best;
+  }
+
+  @Override
+  public String toString() {
+    return "greedy";
+  }
+
+}
@@ -0,0 +1,44 @@
+package at.ac.tuwien.ifs.sge.game.risk.sim;
+
+import at.ac.tuwien.ifs.sge.game.risk.board.Risk;
+import at.ac.tuwien.ifs.sge.game.risk.board.RiskAction;
+import java.util.SplittableRandom;
+
+/**
+ * Chooses the actions of a player during a simulated game. Policies are shared by all games of a
+ * simulation and therefore have to be stateless or thread-safe. All randomness has to be drawn from
+ * the given random, otherwise games cannot be replayed from their seed.
+ */
+@FunctionalInterface
+public interface RiskPolicy {
+
+  /**
+   * Chooses the next action of the current player. The game may be modified temporarily via
+   * apply() and undo() but has to be left in the state it was passed in.
+   *
+   * @param risk - the game, the current player is not negative and the game is not over
+   * @param random - the random of the game
+   * @return a valid action
+   */
+  RiskAction chooseAction(Risk risk, SplittableRandom random);
+
+  /**
+   * Returns a policy choosing uniformly among all possible actions.
+   *
+   * @return the uniform random policy
+   */
+  static RiskPolicy uniformRandom() {
+    return UniformRandomPolicy.INSTANCE;
+  }
+
+  /**
+   * Returns a policy choosing the action maximising the heuristic value of the current player after
+   * it was applied. Ties are broken uniformly at random.
+   *
+   * @return the greedy policy
+   */
+  static RiskPolicy greedy() {
+    return GreedyPolicy.INSTANCE;
+  }
+
+}
@@ -0,0 +1,169 @@
+package at.ac.tuwien.ifs.sge.game.risk.sim;
+
+import at.ac.tuwien.ifs.sge.game.risk.board.Risk;
+import at.ac.tuwien.ifs.sge.game.risk.board.RiskAction;
+import at.ac.tuwien.ifs.sge.game.risk.configuration.RiskConfiguration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Plays complete games of Risk without the engine. Every game is played by a single thread with its
+ * own seed, games are distributed over a ForkJoinPool. The seeds of the games are derived from the
+ * seed of the simulation and determine both the game and the policies, so a simulation can be
+ * replayed exactly and its result does not depend on the pool it runs in.
+ */
+public final class RiskSimulator {
+
+  public static final int DEFAULT_MAX_ACTIONS = 10_000;
+
+  private final RiskConfiguration configuration;
+  private final int numberOfPlayers;
+  private final RiskPolicy[] policies;
+  private final int maxActions;
+  private final boolean blitz;
+
+  /**
+   * Creates a simulator where every player uses the same policy.
+   *
+   * @param configuration - the configuration of the games
+   * @param numberOfPlayers - the number of players
+   * @param policy - the policy of all players
+   */
+  public RiskSimulator(RiskConfiguration configuration, int numberOfPlayers, RiskPolicy policy) {
+    this(configuration, numberOfPlayers, nCopies(policy, numberOfPlayers), DEFAULT_MAX_ACTIONS);
+  }
+
+  /**
+   * Creates a simulator.
+   *
+   * @param configuration - the configuration of the games
+   * @param numberOfPlayers - the number of players
+   * @param policies - the policy of each player
+   * @param maxActions - the number of actions after which a game is aborted
+   */
+  public RiskSimulator(RiskConfiguration configuration, int numberOfPlayers,
+      List<RiskPolicy> policies, int maxActions) {
+    this(configuration, numberOfPlayers, policies, maxActions, false);
+  }
+
+  /**
+   * Creates a simulator. In blitz mode every attack a policy chooses is repeated until the battle
+   * is decided, see Risk.applyBlitz().
+   *
+   * @param configuration - the configuration of the games
+   * @param numberOfPlayers - the number of players
+   * @param policies - the policy of each player
+   * @param maxActions - the number of actions after which a game is aborted
+   * @param blitz - whether battles are resolved in one step
+   */
+  public RiskSimulator(RiskConfiguration configuration, int numberOfPlayers,
+      List<RiskPolicy> policies, int maxActions, boolean blitz) {
+    if (configuration == null) {
+      throw new IllegalArgumentException("Found null");
+    }
+    if (numberOfPlayers < 2 || numberOfPlayers > configuration.getMaxNumberOfPlayers()) {
+      throw new IllegalArgumentException("Wrong number of players");
+    }
+    if (policies == null || policies.size() != numberOfPlayers
+        || policies.stream().anyMatch(Objects::isNull)) {
+      throw new IllegalArgumentException("Expected one policy per player");
+    }
+    if (maxActions <= 0) {
+      throw new IllegalArgumentException("Expected a positive number of actions");
+    }
+    this.configuration = configuration;
+    this.numberOfPlayers = numberOfPlayers;
+    this.policies = policies.toArray(new RiskPolicy[0]);
+    this.maxActions = maxActions;
+    this.blitz = blitz;
+  }
+
+  private static List<RiskPolicy> nCopies(RiskPolicy policy, int n) {
+    List<RiskPolicy> policies = new ArrayList<>(Math.max(0, n));
+    for (int i = 0; i < n; i++) {
+      policies.add(policy);
+    }
+    return policies;
+  }
+
+  /**
+   * Plays the given number of games in the common pool.
+   *
+   * @param games - the number of games
+   * @param seed - the seed of the simulation
+   * @return the results
+   */
+  public SimulationResult simulate(int games, long seed) {
+    return simulate(games, seed, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Plays the given number of games in the given pool.
+   *
+   * @param games - the number of games
+   * @param seed - the seed of the simulation
+   * @param pool - the pool to play the games in
+   * @return the results, ordered like the games
+   */
+  public SimulationResult simulate(int games, long seed, ForkJoinPool pool) {
+    if (games < 0) {
+      throw new IllegalArgumentException("Expected a non-negative number of games");
+    }
+    long[] seeds = new SplittableRandom(seed).longs(games).toArray();
+    List<Callable<GameResult>> tasks = new ArrayList<>(games);
+    for (long gameSeed : seeds) {
+      tasks.add(() -> play(gameSeed));
+    }
+
+    long start = System.nanoTime();
+    List<Future<GameResult>> futures = pool.invokeAll(tasks);
+    GameResult[] results = new GameResult[games];
+    for (int g = 0; g < games; g++) {
+      try {
+        results[g] = futures.get(g).get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while simulating", e);
+      } catch (ExecutionException e) {
+        throw new IllegalStateException("Game with seed " + seeds[g] + " failed", e.getCause());
+      }
+    }
+    long elapsedNanos = System.nanoTime() - start;
+
+    return new SimulationResult(Arrays.asList(results), elapsedNanos);
+  }
+
+  /**
+   * Plays a single game.
+   *
+   * @param seed - the seed of the game
+   * @return the result
+   */
+  public GameResult play(long seed) {
+    SplittableRandom random = new SplittableRandom(seed);
+    Risk risk = new Risk(configuration, numberOfPlayers, random.nextLong());
+    while (risk.getActionRecords().size() < maxActions && !risk.isGameOver()) {
+      final int player = risk.getCurrentPlayer();
+      RiskAction action = player < 0 ? risk.determineNextAction()
+          : policies[player].chooseAction(risk, random);
+      if ((!blitz || player < 0 || risk.applyBlitz(action) == null)
+          && risk.apply(action) == null) {
+        throw new IllegalStateException("Could not apply " + action);
+      }
+    }
+
+    double[] utilities = new double[numberOfPlayers];
+    for (int p = 0; p < numberOfPlayers; p++) {
+      utilities[p] = risk.getUtilityValue(p);
+    }
+    return new GameResult(seed, risk.getActionRecords().size(), risk.isGameOver(), utilities);
+  }
+
+}
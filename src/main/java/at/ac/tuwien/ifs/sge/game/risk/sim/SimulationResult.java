@@ -0,0 +1,122 @@
+package at.ac.tuwien.ifs.sge.game.risk.sim;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of a simulation: the results of all games and the throughput achieved.
+ */
+public final class SimulationResult {
+
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  private final List<GameResult> gameResults;
+  private final long elapsedNanos;
+  private final long numberOfActions;
+  private final int numberOfCompletedGames;
+
+  SimulationResult(List<GameResult> gameResults, long elapsedNanos) {
+    this.gameResults = Collections.unmodifiableList(gameResults);
+    this.elapsedNanos = elapsedNanos;
+    long numberOfActions = 0;
+    int numberOfCompletedGames = 0;
+    for (GameResult gameResult : gameResults) {
+      numberOfActions += gameResult.getNumberOfActions();
+      if (gameResult.isGameOver()) {
+        numberOfCompletedGames++;
+      }
+    }
+    this.numberOfActions = numberOfActions;
+    this.numberOfCompletedGames = numberOfCompletedGames;
+  }
+
+  /**
+   * Return the results of all games in the order they were seeded.
+   *
+   * @return an immutable list of the results
+   */
+  public List<GameResult> getGameResults() {
+    return gameResults;
+  }
+
+  /**
+   * Return the wall clock time the simulation took.
+   *
+   * @return the elapsed time in nanoseconds
+   */
+  public long getElapsedNanos() {
+    return elapsedNanos;
+  }
+
+  /**
+   * Return the number of actions played in all games.
+   *
+   * @return the number of actions
+   */
+  public long getNumberOfActions() {
+    return numberOfActions;
+  }
+
+  /**
+   * Return the number of games which reached a terminal state.
+   *
+   * @return the number of completed games
+   */
+  public int getNumberOfCompletedGames() {
+    return numberOfCompletedGames;
+  }
+
+  /**
+   * Return the number of games which were aborted after the maximum number of actions without
+   * reaching a terminal state.
+   *
+   * @return the number of aborted games
+   */
+  public int getNumberOfAbortedGames() {
+    return gameResults.size() - numberOfCompletedGames;
+  }
+
+  /**
+   * Return the number of games won by the given player.
+   *
+   * @param player - the id of the player
+   * @return the number of wins
+   */
+  public int getWins(int player) {
+    int wins = 0;
+    for (GameResult gameResult : gameResults) {
+      if (gameResult.getWinner() == player) {
+        wins++;
+      }
+    }
+    return wins;
+  }
+
+  /**
+   * Return the number of completed games per second of wall clock time. Aborted games are not
+   * counted, see getNumberOfAbortedGames().
+   *
+   * @return the games per second
+   */
+  public double getGamesPerSecond() {
+    return elapsedNanos > 0 ? numberOfCompletedGames * NANOS_PER_SECOND / elapsedNanos : 0D;
+  }
+
+  /**
+   * Return the number of actions per second of wall clock time.
+   *
+   * @return the actions per second
+   */
+  public double getActionsPerSecond() {
+    return elapsedNanos > 0 ? numberOfActions * NANOS_PER_SECOND / elapsedNanos : 0D;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%d games (%d aborted), %d actions in %.3f s (%.1f games/s, %.1f actions/s)",
+        gameResults.size(), getNumberOfAbortedGames(), numberOfActions,
+        elapsedNanos / NANOS_PER_SECOND, getGamesPerSecond(), getActionsPerSecond());
+  }
+
+}
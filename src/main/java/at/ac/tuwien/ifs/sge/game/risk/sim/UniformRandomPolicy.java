@@ -0,0 +1,24 @@
+package at.ac.tuwien.ifs.sge.game.risk.sim;
+
+import at.ac.tuwien.ifs.sge.game.risk.board.Risk;
+import at.ac.tuwien.ifs.sge.game.risk.board.RiskAction;
+import java.util.SplittableRandom;
+
+final class UniformRandomPolicy implements RiskPolicy {
+
+  static final UniformRandomPolicy INSTANCE = new UniformRandomPolicy();
+
+  private UniformRandomPolicy() {
+  }
+
+  @Override
+  public RiskAction chooseAction(Risk risk, SplittableRandom random) {
+    return risk.sampleRandomAction(random);
+  }
+
+  @Override
+  public String toString() {
+    return "uniformRandom";
+  }
+
+}
@@ -8,14 +8,23 @@ import com.pholser.junit.quickcheck.Property;
 import com.pholser.junit.quickcheck.runner.JUnitQuickcheck;
 import at.ac.tuwien.ifs.sge.game.ActionRecord;
 import at.ac.tuwien.ifs.sge.game.risk.generators.RiskActionGenerator;
+import at.ac.tuwien.ifs.sge.game.risk.sim.GameResult;
+import at.ac.tuwien.ifs.sge.game.risk.sim.RiskPolicy;
+import at.ac.tuwien.ifs.sge.game.risk.sim.RiskSimulator;
+import at.ac.tuwien.ifs.sge.game.risk.sim.SimulationResult;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -978,6 +987,14 @@ public class RiskTest {
 
   }
 
+  @Property
+  public void prop_action_toLong_fromLong(@From(RiskActionGenerator.class) RiskAction action) {
+    if (action.attackingId() == (short) action.attackingId()
+        && action.defendingId() == (short) action.defendingId()) {
+      assertEquals(action, RiskAction.fromLong(action.toLong()));
+    }
+  }
+
   @Property
   public void prop_action_toString_fromString_reverse(
       @From(RiskActionGenerator.class) RiskAction action) {
@@ -1132,6 +1149,499 @@ public class RiskTest {
 
   }
 
+  @Test
+  public void test_action_canonical_1() {
+    assertSame(RiskAction.attack(1, 2, 3), RiskAction.attack(1, 2, 3));
+    assertSame(RiskAction.reinforce(5, 1), RiskAction.select(5));
+    assertSame(RiskAction.occupy(100), RiskAction.fromString("O100"));
+    assertSame(RiskAction.casualties(1, 2), RiskAction.casualties(1, 2));
+    assertEquals(RiskAction.fortify(1000, 2000, 3), RiskAction.fortify(1000, 2000, 3));
+    assertEquals(RiskAction.attack(1, 2, 100000), RiskAction.attack(1, 2, 100000));
+    assertEquals(RiskAction.fortify(1, 2, 1000), RiskAction.fortify(1, 2, 1000));
+  }
+
+  @Test
+  public void test_action_codec_1() {
+    Risk risk = new Risk(simpleConfigYaml, 2);
+    for (int i = 0; i < 100 && !risk.isGameOver(); i++) {
+      risk = (Risk) risk.doAction(risk.getPossibleActions().stream().findFirst().get());
+    }
+    List<ActionRecord<RiskAction>> history = new ArrayList<>(risk.getActionRecords());
+    history.add(new ActionRecord<>(-6, RiskAction.attack(Integer.MAX_VALUE, -100000, 7)));
+
+    ByteBuffer buffer = RiskActionCodec.encode(history);
+    assertEquals(RiskActionCodec.encodedLength(history), buffer.remaining());
+    assertEquals(history, RiskActionCodec.decode(buffer));
+  }
+
+  @Test
+  public void test_actionHistory_1() {
+    final int size = 50000;
+    ActionHistory history = ActionHistory.EMPTY;
+    for (int i = 0; i < size; i++) {
+      history = history.append(new ActionRecord<>(i % 3, RiskAction.select(i % 42)));
+    }
+    int i = 0;
+    for (ActionRecord<RiskAction> actionRecord : history) {
+      assertEquals(i++ % 3, actionRecord.getPlayer());
+    }
+    assertEquals(size, i);
+    assertEquals(size, history.stream().filter(r -> r.getPlayer() >= 0).count());
+    assertEquals(size, history.toArray().length);
+    List<ActionRecord<RiskAction>> copy = new ArrayList<>(history);
+    assertEquals(copy.hashCode(), history.hashCode());
+    assertEquals(copy, history);
+    assertEquals(RiskActionCodec.encodedLength(history),
+        RiskActionCodec.encode(history).remaining());
+  }
+
+  @Test
+  public void test_game_generateActions_1() {
+    RiskConfiguration riskConfiguration = RiskConfiguration.getYaml().load(simpleConfigYaml);
+    riskConfiguration.setChooseInitialTerritories(true);
+    Risk risk = new Risk(riskConfiguration, 2);
+
+    long[] codes = new long[1];
+    assertEquals(3, risk.generateActions(codes));
+    codes = new long[3];
+    assertEquals(3, risk.generateActions(codes));
+    assertEquals(Set.of(RiskAction.select(0), RiskAction.select(1), RiskAction.select(2)),
+        Arrays.stream(codes).mapToObj(risk::toAction).collect(Collectors.toSet()));
+
+    for (int i = 0; i < 200 && !risk.isGameOver(); i++) {
+      int n = risk.generateActions(codes);
+      if (n > codes.length) {
+        codes = new long[n];
+        risk.generateActions(codes);
+      }
+      assertEquals(risk.getPossibleActions().size(), n);
+      risk = risk.doAction(codes[i % n]);
+    }
+  }
+
+  @Test
+  public void test_game_generateActions_2() {
+    String sparseConfigYaml = simpleConfigYaml
+        .replace("|2[0]2|", "|2[7]2|").replace("|2[1]2|", "|2[9]2|")
+        .replace("|2[2]2|", "|2[3]2|")
+        .replace("connects: [0, 2]", "connects: [7, 3]")
+        .replace("connects: [0, 1]", "connects: [7, 9]")
+        .replace("connects: [1, 2]", "connects: [9, 3]")
+        .replace("territoryId: 1\n", "territoryId: 9\n")
+        .replace("territoryId: 2\n", "territoryId: 3\n")
+        .replace("territoryId: 0\n", "territoryId: 7\n");
+    RiskConfiguration riskConfiguration = RiskConfiguration.getYaml().load(sparseConfigYaml);
+    riskConfiguration.setChooseInitialTerritories(true);
+    Risk risk = new Risk(riskConfiguration, 2, 3L);
+
+    long[] codes = new long[3];
+    assertEquals(3, risk.generateActions(codes));
+    assertEquals(Set.of(RiskAction.select(7), RiskAction.select(9), RiskAction.select(3)),
+        Arrays.stream(codes).mapToObj(RiskAction::fromLong).collect(Collectors.toSet()));
+
+    for (int i = 0; i < 200 && !risk.isGameOver(); i++) {
+      int n = risk.generateActions(codes);
+      if (n > codes.length) {
+        codes = new long[n];
+        risk.generateActions(codes);
+      }
+      Set<RiskAction> possibleActions = risk.getPossibleActions();
+      for (int c = 0; c < n; c++) {
+        RiskAction action = RiskAction.fromLong(codes[c]);
+        assertEquals(action, risk.toAction(codes[c]));
+        assertEquals(codes[c], action.toLong());
+        assertTrue(possibleActions.contains(action));
+      }
+      RiskAction action = risk.toAction(codes[i % n]);
+      Risk next = risk.doAction(action.toLong());
+      assertEquals(((Risk) risk.doAction(action)).stateHash(), next.stateHash());
+      risk = next;
+    }
+  }
+
+  @Test
+  public void test_game_stateHash_1() {
+    RiskConfiguration riskConfiguration = RiskConfiguration.getYaml().load(simpleConfigYaml);
+    riskConfiguration.setChooseInitialTerritories(true);
+    riskConfiguration.setInitialTroops(new int[]{4});
+    Risk risk = new Risk(riskConfiguration, 2);
+    assertEquals(new Risk(riskConfiguration, 2).stateHash(), risk.stateHash());
+
+    risk = (Risk) risk.doAction(RiskAction.select(0));
+    risk = (Risk) risk.doAction(RiskAction.select(1));
+    risk = (Risk) risk.doAction(RiskAction.select(2));
+    long beforeReinforce = risk.stateHash();
+    assertEquals(beforeReinforce, new Risk(risk).stateHash());
+
+    Risk a = (Risk) risk.doAction(RiskAction.reinforce(0, 1));
+    assertNotEquals(beforeReinforce, a.stateHash());
+    assertNotEquals(a.stateHash(), ((Risk) risk.doAction(RiskAction.reinforce(2, 1))).stateHash());
+    a = (Risk) a.doAction(RiskAction.reinforce(1, 1));
+    a = (Risk) a.doAction(RiskAction.reinforce(2, 1));
+    Risk b = (Risk) risk.doAction(RiskAction.reinforce(2, 1));
+    b = (Risk) b.doAction(RiskAction.reinforce(1, 1));
+    b = (Risk) b.doAction(RiskAction.reinforce(0, 1));
+    assertEquals(a.stateHash(), b.stateHash());
+  }
+
+  /**
+   * Chooses the next action of a playout deterministically. Chance actions are determined by the
+   * game, otherwise the smallest action by its string is chosen, or with preferAttacks the largest
+   * one other than ending the phase, which keeps the game attacking.
+   */
+  private static RiskAction nextDeterministicAction(Risk risk, boolean preferAttacks) {
+    if (risk.getCurrentPlayer() < 0) {
+      return risk.determineNextAction();
+    }
+    Comparator<RiskAction> byString = Comparator.comparing(RiskAction::toString);
+    if (!preferAttacks) {
+      return risk.getPossibleActions().stream().min(byString).get();
+    }
+    return risk.getPossibleActions().stream()
+        .max(Comparator.comparing((RiskAction action) -> !action.isEndPhase())
+            .thenComparing(byString)).get();
+  }
+
+  @Test
+  public void test_game_apply_undo_1() {
+    Risk risk = new Risk(simpleConfigYaml, 2);
+    Deque<Risk.UndoToken> tokens = new ArrayDeque<>();
+    Deque<Long> hashes = new ArrayDeque<>();
+    Deque<String> texts = new ArrayDeque<>();
+    for (int i = 0; i < 60 && !risk.isGameOver(); i++) {
+      RiskAction action = risk.getPossibleActions().stream().min(
+          (a, b) -> a.toString().compareTo(b.toString())).get();
+      Risk expected = (Risk) risk.doAction(action);
+      hashes.push(risk.stateHash());
+      texts.push(risk.toTextRepresentation());
+      tokens.push(risk.apply(action));
+      assertEquals(expected.stateHash(), risk.stateHash());
+      assertEquals(expected.getActionRecords(), risk.getActionRecords());
+    }
+
+    final Risk ref = risk;
+    assertThrowsExactly(IllegalArgumentException.class, () -> ref.undo(tokens.getLast()));
+    while (!tokens.isEmpty()) {
+      risk.undo(tokens.pop());
+      assertEquals((long) hashes.pop(), risk.stateHash());
+      assertEquals(texts.pop(), risk.toTextRepresentation());
+    }
+    assertTrue(risk.getActionRecords().isEmpty());
+  }
+
+  @Test
+  public void test_game_apply_undo_2() {
+    Risk a = new Risk(RiskConfiguration.RISK_DEFAULT_CONFIG, 3, 13L);
+    Risk b = new Risk(RiskConfiguration.RISK_DEFAULT_CONFIG, 3, 13L);
+    for (int i = 0; i < 600 && !a.isGameOver(); i++) {
+      if (a.getCurrentPlayer() >= 0) {
+        RiskAction probe = a.getPossibleActions().stream().filter(x -> !x.isEndPhase())
+            .min((x, y) -> x.toString().compareTo(y.toString()))
+            .orElse(RiskAction.endPhase());
+        Risk.UndoToken token = a.getBoard().isAttackPhase() && !probe.isCardIds()
+            ? a.applyBlitz(probe) : a.apply(probe);
+        if (token != null) {
+          a.undo(token);
+        }
+      }
+      RiskAction action = nextDeterministicAction(a, true);
+      assertEquals(action, b.getCurrentPlayer() < 0 ? b.determineNextAction() : action);
+      a.apply(action);
+      b.apply(action);
+    }
+    assertEquals(a.stateHash(), b.stateHash());
+  }
+
+  @Test
+  public void test_game_withoutCards_1() {
+    RiskConfiguration config = RiskConfiguration.getYaml().load(simpleConfigYaml);
+    config.setWithCards(false);
+    config.setFortifyOnlyWithNonFightingArmies(true);
+    Risk risk = new Risk(config, 2);
+    for (int i = 0; i < 200 && !risk.isGameOver(); i++) {
+      RiskAction action = nextDeterministicAction(risk, false);
+      risk = (Risk) risk.doAction(action);
+      assertEquals(risk.getBoard().getPlayerCards(0), risk.getGame(0).getBoard().getPlayerCards(0));
+    }
+  }
+
+  @Test
+  public void test_simulator_1() {
+    RiskConfiguration config = RiskConfiguration.getYaml().load(simpleConfigYaml);
+    RiskSimulator simulator = new RiskSimulator(config, 2,
+        List.of(RiskPolicy.greedy(), RiskPolicy.uniformRandom()), 2000);
+    SimulationResult result = simulator.simulate(20, 42L);
+    assertEquals(20, result.getGameResults().size());
+    assertEquals(result.getGameResults().stream().filter(GameResult::isGameOver).count(),
+        result.getWins(0) + result.getWins(1));
+    assertEquals(result.getWins(0) + result.getWins(1), result.getNumberOfCompletedGames());
+    assertEquals(20, result.getNumberOfCompletedGames() + result.getNumberOfAbortedGames());
+    assertTrue(result.getNumberOfActions() > 0);
+    assertEquals(result.getNumberOfActions(),
+        result.getGameResults().stream().mapToLong(GameResult::getNumberOfActions).sum());
+    SimulationResult aborted = new RiskSimulator(config, 2,
+        List.of(RiskPolicy.greedy(), RiskPolicy.uniformRandom()), 1).simulate(5, 42L);
+    assertEquals(5, aborted.getNumberOfAbortedGames());
+    assertEquals(0D, aborted.getGamesPerSecond());
+  }
+
+  @Test
+  public void test_game_seed_1() {
+    RiskConfiguration config = RiskConfiguration.getYaml().load(simpleConfigYaml);
+    RiskSimulator simulator = new RiskSimulator(config, 2, RiskPolicy.uniformRandom());
+    assertEquals(simulator.simulate(10, 7L).getGameResults(),
+        simulator.simulate(10, 7L).getGameResults());
+
+    Risk a = new Risk(RiskConfiguration.RISK_DEFAULT_CONFIG, 4, 11L);
+    Risk b = new Risk(RiskConfiguration.RISK_DEFAULT_CONFIG, 4, 11L);
+    for (int i = 0; i < 300 && !a.isGameOver(); i++) {
+      for (int copies = 0; copies < i % 3; copies++) {
+        a.getGame(copies);
+      }
+      RiskAction action = nextDeterministicAction(a, false);
+      assertEquals(action, b.getCurrentPlayer() < 0 ? b.determineNextAction() : action);
+      a = (Risk) a.doAction(action);
+      b = (Risk) b.doAction(action);
+      assertEquals(a.toTextRepresentation(), b.toTextRepresentation());
+      assertEquals(a.stateHash(), b.stateHash());
+    }
+  }
+
+  @Test
+  public void test_game_seed_2() {
+    Risk risk = new Risk(RiskConfiguration.RISK_DEFAULT_CONFIG, 2, 5L);
+    boolean differentCasualties = false;
+    for (int i = 0; i < 3000 && !risk.isGameOver() && !differentCasualties; i++) {
+      if (risk.getCurrentPlayer() >= 0 && risk.getBoard().isAttackPhase()) {
+        Map<List<Integer>, Set<RiskAction>> casualtiesByDice = new HashMap<>();
+        for (RiskAction attack : risk.getPossibleActions()) {
+          if (attack.isEndPhase() || attack.isCardIds()) {
+            continue;
+          }
+          Risk attacked = (Risk) risk.doAction(attack);
+          RiskBoard board = attacked.getBoard();
+          casualtiesByDice.computeIfAbsent(
+              List.of(board.getNrOfAttackerDice(), board.getNrOfDefenderDice()),
+              dice -> new HashSet<>()).add(attacked.determineNextAction());
+        }
+        differentCasualties = casualtiesByDice.values().stream().anyMatch(c -> c.size() > 1);
+      }
+      risk = (Risk) risk.doAction(nextDeterministicAction(risk, true));
+    }
+    assertTrue(differentCasualties);
+  }
+
+  @Test
+  public void test_battleOdds_1() {
+    BattleOdds battleOdds = BattleOdds.of(3, 2);
+    assertEquals(7776L, battleOdds.getTotalRolls(3, 2));
+    assertEquals(2890L, battleOdds.getRolls(3, 2, 0));
+    assertEquals(2611L, battleOdds.getRolls(3, 2, 1));
+    assertEquals(2275L, battleOdds.getRolls(3, 2, 2));
+    assertEquals(21L, battleOdds.getRolls(1, 1, 1));
+    assertThrowsExactly(IllegalArgumentException.class, () -> battleOdds.getProbability(4, 2, 0));
+
+    Risk risk = new Risk(RiskConfiguration.RISK_DEFAULT_CONFIG, 2, 3L);
+    assertTrue(risk.getChanceActions().isEmpty());
+    for (int i = 0; i < 2000 && !risk.isGameOver(); i++) {
+      if (risk.getCurrentPlayer() < 0) {
+        Map<RiskAction, Double> chanceActions = risk.getChanceActions();
+        assertEquals(risk.getPossibleActions(), chanceActions.keySet());
+        assertEquals(1D, chanceActions.values().stream().mapToDouble(Double::doubleValue).sum(),
+            1e-9);
+        assertTrue(chanceActions.containsKey(risk.determineNextAction()));
+      }
+      RiskAction action = nextDeterministicAction(risk, true);
+      risk = (Risk) risk.doAction(action);
+    }
+  }
+
+  @Test
+  public void test_battleOracle_1() {
+    BattleOracle battleOracle = BattleOracle.of(3, 2);
+    assertSame(battleOracle, new Risk().getBoard().getBattleOracle());
+    assertEquals(15D / 36D, battleOracle.getWinProbability(1, 1), 1e-12);
+    assertEquals(0.7542, battleOracle.getWinProbability(2, 1), 1e-4);
+    assertEquals(1D, battleOracle.getWinProbability(3, 0));
+    assertEquals(0D, battleOracle.getWinProbability(0, 3));
+
+    double[] attackerLosses = battleOracle.getAttackerLossDistribution(10, 7);
+    double[] defenderLosses = battleOracle.getDefenderLossDistribution(10, 7);
+    assertEquals(11, attackerLosses.length);
+    assertEquals(8, defenderLosses.length);
+    assertEquals(1D, Arrays.stream(attackerLosses).sum(), 1e-12);
+    assertEquals(battleOracle.getWinProbability(10, 7), defenderLosses[7], 1e-12);
+    assertEquals(1D - battleOracle.getWinProbability(10, 7), attackerLosses[10], 1e-12);
+    double expectedSurvivors = 0D;
+    for (int k = 0; k < 10; k++) {
+      expectedSurvivors += (10 - k) * attackerLosses[k];
+    }
+    assertEquals(expectedSurvivors, battleOracle.getExpectedAttackerSurvivors(10, 7), 1e-9);
+    assertTrue(battleOracle.getWinProbability(300, 200) > 0.99);
+    assertEquals(battleOracle.getWinProbability(1000, 1200),
+        battleOracle.getDefenderLossDistribution(1000, 1200)[1200], 1e-9);
+    assertEquals(battleOracle.getWinProbability(255, 255),
+        battleOracle.getDefenderLossDistribution(255, 255)[255], 1e-9);
+  }
+
+  @Test
+  public void test_game_blitz_1() {
+    Yaml yaml = RiskConfiguration.getYaml();
+    RiskConfiguration config = yaml.load(yaml.dump(RiskConfiguration.RISK_DEFAULT_CONFIG));
+    assertFalse(config.isFortifyOnlyWithNonFightingArmies());
+    assertTrue(playBlitzes(new Risk(config, 2, 5L), false) > 0);
+    config.setFortifyOnlyWithNonFightingArmies(true);
+    assertTrue(playBlitzes(new Risk(config, 2, 5L), true) > 0);
+  }
+
+  private static int playBlitzes(Risk risk, boolean roundByRound) {
+    int battles = 0;
+    for (int i = 0; i < 3000 && !risk.isGameOver(); i++) {
+      RiskAction action = nextDeterministicAction(risk, true);
+      Risk next = risk.getCurrentPlayer() < 0 ? null : risk.blitz(action);
+      if (next == null) {
+        risk = (Risk) risk.doAction(action);
+        continue;
+      }
+      battles++;
+      List<ActionRecord<RiskAction>> records = next.getActionRecords();
+      int recorded = risk.getActionRecords().size();
+      RiskAction casualties = records.get(records.size() - 1).getAction();
+      if (roundByRound) {
+        assertEquals(0, (records.size() - recorded) % 2);
+        assertFalse(casualties.isBattleCasualties());
+      } else {
+        assertEquals(recorded + 2, records.size());
+        assertTrue(casualties.isBattleCasualties());
+        assertEquals(casualties, RiskAction.fromString(casualties.toString()));
+      }
+      Risk replay = risk;
+      for (ActionRecord<RiskAction> record : records.subList(recorded, records.size())) {
+        assertTrue(replay.isValidAction(record.getAction()));
+        replay = (Risk) replay.doAction(record.getAction());
+      }
+      assertEquals(next.stateHash(), replay.stateHash());
+      assertTrue(next.getBoard().isOccupyPhase()
+          || next.getBoard().getTerritoryOccupantId(action.defendingId()) == risk.getCurrentPlayer()
+          || next.getBoard().getTerritoryTroops(action.attackingId()) == 1);
+
+      long hash = risk.stateHash();
+      Risk.UndoToken token = risk.applyBlitz(action);
+      assertNotNull(token);
+      risk.undo(token);
+      assertEquals(hash, risk.stateHash());
+      risk = next;
+    }
+    return battles;
+  }
+
+  @Test
+  public void test_playerAggregates_1() {
+    Risk risk = new Risk(RiskConfiguration.RISK_DEFAULT_CONFIG, 3, 5L);
+    for (int i = 0; i < 1500 && !risk.isGameOver(); i++) {
+      RiskAction action = nextDeterministicAction(risk, true);
+      Risk next = (Risk) risk.doAction(action);
+      RiskBoard board = next.getBoard();
+      for (int p = 0; p < next.getNumberOfPlayers(); p++) {
+        Set<Integer> territories = board.getTerritoriesOccupiedByPlayer(p);
+        assertEquals(territories.size(), board.getNrOfTerritoriesOccupiedByPlayer(p));
+        assertEquals(territories.stream().mapToInt(board::getTerritoryTroops).sum(),
+            board.getNrOfTroopsOfPlayer(p));
+        assertEquals(!territories.isEmpty(), board.isPlayerStillAlive(p));
+      }
+      for (int c : board.getContinentIds()) {
+        Set<Integer> occupants = board.getTerritories().values().stream()
+            .filter(t -> t.getContinentId() == c).map(RiskTerritory::getOccupantPlayerId)
+            .collect(Collectors.toSet());
+        assertEquals(occupants.size() == 1 ? occupants.iterator().next() : -1,
+            board.getContinentOwner(c));
+      }
+      for (int t : board.getTerritoryIds()) {
+        int occupant = board.getTerritoryOccupantId(t);
+        Set<Integer> neighbors = board.neighboringTerritories(t);
+        assertEquals(neighbors, board.getTerritoriesOfMask(board.getNeighborMask(t)));
+        assertEquals(neighbors.stream().filter(n -> board.getTerritoryOccupantId(n) != occupant)
+            .collect(Collectors.toSet()), board.neighboringEnemyTerritories(t));
+        assertEquals(t, board.getTerritoryIdOfBit(board.getTerritoryBit(t)));
+        assertEquals(board.neighboringEnemyTerritories(t).size(), board.getNrOfEnemyNeighbors(t));
+      }
+      for (int p = 0; p < next.getNumberOfPlayers(); p++) {
+        assertEquals(board.getTerritoriesOccupiedByPlayer(p).stream()
+                .filter(t -> !board.neighboringEnemyTerritories(t).isEmpty())
+                .collect(Collectors.toSet()),
+            board.getFrontierTerritoriesOfPlayer(p));
+      }
+      assertEquals(0, risk.getBoard().getNrOfTroopsOfPlayer(-1));
+      risk = next;
+    }
+  }
+
+  @Test
+  public void test_actionSpace_1() {
+    Risk risk = new Risk(RiskConfiguration.RISK_DEFAULT_CONFIG, 2, 17L);
+    SplittableRandom random = new SplittableRandom(17L);
+    for (int i = 0; i < 1000 && !risk.isGameOver(); i++) {
+      RiskActionSpace space = risk.getActionSpace();
+      long[] codes = new long[space.size()];
+      assertEquals(space.size(), risk.generateActions(codes));
+      assertTrue(space.getNumberOfGroups() <= space.size());
+      for (int a = 0; a < codes.length; a++) {
+        assertEquals(codes[a], space.getActionCode(a));
+      }
+      int a = 0;
+      for (int g = 0; g < space.getNumberOfGroups(); g++) {
+        for (int v = space.getMinValue(g); v <= space.getMaxValue(g); v++, a++) {
+          assertEquals(RiskAction.of(space.getSrcId(g), space.getTargetId(g), v),
+              space.getAction(a));
+        }
+      }
+      assertEquals(space.size(), a);
+      Set<RiskAction> possibleActions = risk.getPossibleActions();
+      assertEquals(possibleActions, risk.streamPossibleActions().collect(Collectors.toSet()));
+      assertEquals(possibleActions.size(), space.parallelStream().distinct().count());
+      assertTrue(possibleActions.contains(risk.sampleRandomAction(random)));
+      RiskAction action = risk.getCurrentPlayer() < 0 ? risk.determineNextAction()
+          : space.sampleAction(random);
+      assertTrue(risk.isValidAction(action));
+      risk = (Risk) risk.doAction(action);
+    }
+  }
+
+  @Test
+  public void test_tradeInTable_1() {
+    TradeInTable table = TradeInTable.of(3);
+    short[] hand = {RiskCard.pack(1, 0), RiskCard.pack(1, 1), RiskCard.pack(1, 2),
+        RiskCard.pack(2, 3), RiskCard.pack(3, 4)};
+    assertEquals(Set.of(0b00111, 0b11001, 0b11010, 0b11100),
+        Arrays.stream(table.getTradeableSets(hand)).boxed().collect(Collectors.toSet()));
+    assertTrue(table.containsTradeableSet(hand));
+    assertFalse(table.containsTradeableSet(Arrays.copyOf(hand, 2)));
+    assertFalse(table.isTradeableSet(hand, List.of(0, 1, 3)));
+    assertTrue(table.isTradeableSet(new short[]{RiskCard.pack(RiskCard.JOKER, -1),
+        RiskCard.pack(2, 3), RiskCard.PACKED_WILDCARD}, List.of(0, 1, 2)));
+
+    short[] large = new short[9];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = RiskCard.pack(1 + i % 3, i);
+    }
+    assertEquals(3 * 3 * 3 + 3, table.getTradeableSets(large).length);
+  }
+
+  @Test
+  public void test_packedCards_1() {
+    for (int cardType = RiskCard.WILDCARD; cardType <= RiskCard.MAX_PACKED_TYPE + RiskCard.WILDCARD;
+        cardType++) {
+      for (int index : new int[]{-1, 0, 41, RiskCard.MAX_PACKED_TERRITORIES - 1}) {
+        short card = RiskCard.pack(cardType, index);
+        assertEquals(cardType, RiskCard.unpackCardType(card));
+        assertEquals(index, RiskCard.unpackTerritoryIndex(card));
+      }
+    }
+    assertEquals(RiskCard.PACKED_WILDCARD, RiskCard.pack(RiskCard.WILDCARD, -1));
+    assertThrowsExactly(IllegalArgumentException.class,
+        () -> RiskCard.pack(RiskCard.INFANTRY, RiskCard.MAX_PACKED_TERRITORIES));
+  }
+
   @Test
   public void test_tooSmallFields() {
     RiskConfiguration config = RiskConfiguration.getYaml().load(simpleConfigYaml);